@@ -0,0 +1,24 @@
+package io.esticade;
+
+/**
+ * Bean used as event body in the benchmarks, roughly the size of a typical business event.
+ */
+public class BenchmarkPayload {
+    public long id;
+    public String name;
+    public double amount;
+    public double[] values;
+    public boolean active;
+
+    public BenchmarkPayload(){}
+
+    static BenchmarkPayload sample() {
+        BenchmarkPayload payload = new BenchmarkPayload();
+        payload.id = 1234567890L;
+        payload.name = "Benchmark payload";
+        payload.amount = 1234.5678;
+        payload.values = new double[]{1.5, 2.25, 3.125, 4.0625, 5.03125, 6.015625, 7.0078125, 8.00390625};
+        payload.active = true;
+        return payload;
+    }
+}
@@ -0,0 +1,50 @@
+package io.esticade;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Full request-response round trip through {@link EmitChain}.
+ *
+ * <p>Service is recreated for every iteration, so chain listeners and timers left behind by the previous iteration
+ * do not pile up.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmitChainBenchmark {
+    private Service service;
+    private BenchmarkPayload payload;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        service = new Service("Benchmark Chain Service");
+        payload = BenchmarkPayload.sample();
+
+        service.on("BenchmarkChainRequest", ev -> ev.emit("BenchmarkChainResponse", ev.body));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public Event execute() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Event> response = new CompletableFuture<>();
+
+        service.emitChain("BenchmarkChainRequest", payload)
+            .on("BenchmarkChainResponse", response::complete)
+            .execute();
+
+        return response.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,68 @@
+package io.esticade;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.esticade.driver.EventCodecs;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding cost of a single event, without any transport involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBenchmark {
+    private ServiceParams params;
+    private Event event;
+    private Event received;
+    private JsonNode tree;
+    private byte[] wire;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper();
+        params = new ServiceParams("Benchmark Service");
+        event = new Event(params, "BenchmarkEvent", BenchmarkPayload.sample());
+        wire = event.toString().getBytes(StandardCharsets.UTF_8);
+        tree = mapper.readTree(wire);
+        received = new Event(params, tree);
+    }
+
+    @Benchmark
+    public String encode() {
+        return event.toString();
+    }
+
+    @Benchmark
+    public Event decode() throws IOException {
+        return new Event(params, mapper.readTree(wire));
+    }
+
+    @Benchmark
+    public BenchmarkPayload decodeTyped() throws IOException {
+        return (BenchmarkPayload) EventCodecs.JSON.decode(wire, Event.readerFor(BenchmarkPayload.class)).body;
+    }
+
+    @Benchmark
+    public BenchmarkPayload decodeThenBodyAs() throws IOException {
+        return new Event(params, mapper.readTree(wire)).bodyAs(BenchmarkPayload.class);
+    }
+
+    @Benchmark
+    public Event wrap() {
+        return new Event(params, tree);
+    }
+
+    @Benchmark
+    public BenchmarkPayload bodyAs() {
+        return received.bodyAs(BenchmarkPayload.class);
+    }
+}
@@ -0,0 +1,54 @@
+package io.esticade;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of emitting and receiving events through the connector selected by the configuration, in-memory by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+    private Service service;
+    private BenchmarkPayload payload;
+    private BlockingQueue<Event> received;
+
+    @Setup
+    public void setup() throws IOException {
+        service = new Service("Benchmark Service");
+        payload = BenchmarkPayload.sample();
+        received = new ArrayBlockingQueue<>(1);
+
+        service.on("BenchmarkReceive", received::offer);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    /**
+     * Emit without anybody listening, measures encoding and publishing.
+     */
+    @Benchmark
+    public void emit() {
+        service.emit("BenchmarkEmit", payload);
+    }
+
+    /**
+     * Emit and wait until the handler has received the event.
+     */
+    @Benchmark
+    public Event receive() throws InterruptedException {
+        service.emit("BenchmarkReceive", payload);
+        return received.take();
+    }
+}
@@ -0,0 +1,285 @@
+package io.esticade;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Records every event handled by a service as a hop of its chain, see {@link Service#enableChainProfiler(int)}.
+ *
+ * <p>Hops are written into a ring buffer of fixed size records allocated outside the heap, so profiling a busy
+ * service adds no garbage and the oldest hops are simply overwritten. The IDs, event name and emitting service are
+ * stored as ASCII truncated to the width of their field.</p>
+ *
+ * <p>Only the hops handled in this process are known. Profile every service of a flow and compare the chains by
+ * their correlation ID to see the whole flow.</p>
+ */
+public class ChainProfiler {
+    private static final int ID_BYTES = 36;
+    private static final int NAME_BYTES = 64;
+    private static final int SERVICE_BYTES = 48;
+
+    private static final int PUBLISHED_AT = 0;
+    private static final int RECEIVED_AT = PUBLISHED_AT + 8;
+    private static final int HANDLER_NANOS = RECEIVED_AT + 8;
+    private static final int CORRELATION_ID = HANDLER_NANOS + 8;
+    private static final int EVENT_ID = CORRELATION_ID + ID_BYTES;
+    private static final int PARENT_ID = EVENT_ID + ID_BYTES;
+    private static final int NAME = PARENT_ID + ID_BYTES;
+    private static final int SERVICE = NAME + NAME_BYTES;
+    private static final int RECORD_BYTES = 256;
+    static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_BYTES;
+
+    private final int capacity;
+    private final ByteBuffer records;
+    private final AtomicLong sequence = new AtomicLong();
+    // Sequence number of the hop stored in each slot, -1 while the slot is being written.
+    private final AtomicLongArray published;
+
+    ChainProfiler(int capacity) {
+        if(capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Chain profiler capacity must be between 1 and " + MAX_CAPACITY + ": " + capacity);
+        }
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES);
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * @param event Handled event
+     * @param publishedAt Time the event was published in milliseconds since the epoch, 0 if unknown.
+     * @param receivedAt Time the handler started in milliseconds since the epoch
+     * @param handlerNanos Time spent in the handler
+     */
+    void record(Event event, long publishedAt, long receivedAt, long handlerNanos) {
+        long seq = sequence.getAndIncrement();
+        int slot = (int) (seq % capacity);
+        int offset = slot * RECORD_BYTES;
+
+        published.set(slot, -1);
+        records.putLong(offset + PUBLISHED_AT, publishedAt);
+        records.putLong(offset + RECEIVED_AT, receivedAt);
+        records.putLong(offset + HANDLER_NANOS, handlerNanos);
+        putAscii(offset + CORRELATION_ID, ID_BYTES, event.correlationId);
+        putAscii(offset + EVENT_ID, ID_BYTES, event.eventId);
+        putAscii(offset + PARENT_ID, ID_BYTES, event.parentId);
+        putAscii(offset + NAME, NAME_BYTES, event.name);
+        putAscii(offset + SERVICE, SERVICE_BYTES, event.service);
+        published.lazySet(slot, seq);
+    }
+
+    /**
+     * Chains of the hops still in the buffer, the slowest first.
+     *
+     * @param limit Maximum number of chains to return
+     * @return Chains ordered by the time from the first publish to the end of the last handler.
+     */
+    public List<Chain> slowestChains(int limit) {
+        Map<String, List<Hop>> chains = new HashMap<>();
+        for (Hop hop : hops()) {
+            chains.computeIfAbsent(hop.correlationId, id -> new ArrayList<>()).add(hop);
+        }
+
+        return chains.entrySet().stream()
+            .map(entry -> new Chain(entry.getKey(), entry.getValue()))
+            .sorted(Comparator.comparingLong(Chain::getDurationMillis).reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Human readable report of the slowest chains.
+     *
+     * @param limit Maximum number of chains to include
+     * @return Report with a line per chain followed by a line per hop.
+     */
+    public String dumpSlowestChains(int limit) {
+        StringBuilder dump = new StringBuilder();
+        slowestChains(limit).forEach(dump::append);
+        return dump.toString();
+    }
+
+    private List<Hop> hops() {
+        List<Hop> hops = new ArrayList<>(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            long seq = published.get(slot);
+            if(seq < 0) {
+                continue;
+            }
+
+            int offset = slot * RECORD_BYTES;
+            Hop hop = new Hop(
+                getAscii(offset + CORRELATION_ID, ID_BYTES),
+                getAscii(offset + EVENT_ID, ID_BYTES),
+                getAscii(offset + PARENT_ID, ID_BYTES),
+                getAscii(offset + NAME, NAME_BYTES),
+                getAscii(offset + SERVICE, SERVICE_BYTES),
+                records.getLong(offset + PUBLISHED_AT),
+                records.getLong(offset + RECEIVED_AT),
+                records.getLong(offset + HANDLER_NANOS)
+            );
+
+            // Skip the slot if it was overwritten while being read.
+            if(published.get(slot) == seq) {
+                hops.add(hop);
+            }
+        }
+        return hops;
+    }
+
+    private void putAscii(int offset, int length, String value) {
+        int chars = value == null ? 0 : Math.min(length, value.length());
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            records.put(offset + i, c > 0 && c < 0x80 ? (byte) c : (byte) '?');
+        }
+        for (int i = chars; i < length; i++) {
+            records.put(offset + i, (byte) 0);
+        }
+    }
+
+    private String getAscii(int offset, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        while(count < length) {
+            byte b = records.get(offset + count);
+            if(b == 0) {
+                break;
+            }
+            chars[count++] = (char) b;
+        }
+        return count == 0 ? null : new String(chars, 0, count);
+    }
+
+    /**
+     * Hops of a single chain handled in this process.
+     */
+    public static class Chain {
+        private final String correlationId;
+        private final List<Hop> hops;
+        private final long durationMillis;
+
+        Chain(String correlationId, List<Hop> hops) {
+            hops.sort(Comparator.comparingLong(Hop::getReceivedAt));
+
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            for (Hop hop : hops) {
+                start = Math.min(start, hop.publishedAt > 0 ? hop.publishedAt : hop.receivedAt);
+                end = Math.max(end, hop.receivedAt + TimeUnit.NANOSECONDS.toMillis(hop.handlerNanos));
+            }
+
+            this.correlationId = correlationId;
+            this.hops = hops;
+            this.durationMillis = end - start;
+        }
+
+        public String getCorrelationId() {
+            return correlationId;
+        }
+
+        /**
+         * @return Hops in the order they were received.
+         */
+        public List<Hop> getHops() {
+            return hops;
+        }
+
+        /**
+         * @return Time from the first publish to the end of the last handler.
+         */
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder()
+                .append(correlationId).append(' ').append(durationMillis).append(" ms\n");
+            hops.forEach(hop -> result.append("  ").append(hop).append('\n'));
+            return result.toString();
+        }
+    }
+
+    /**
+     * Single event handled as part of a chain.
+     */
+    public static class Hop {
+        private final String correlationId;
+        private final String eventId;
+        private final String parentId;
+        private final String name;
+        private final String service;
+        private final long publishedAt;
+        private final long receivedAt;
+        private final long handlerNanos;
+
+        Hop(String correlationId, String eventId, String parentId, String name, String service, long publishedAt, long receivedAt, long handlerNanos) {
+            this.correlationId = correlationId;
+            this.eventId = eventId;
+            this.parentId = parentId;
+            this.name = name;
+            this.service = service;
+            this.publishedAt = publishedAt;
+            this.receivedAt = receivedAt;
+            this.handlerNanos = handlerNanos;
+        }
+
+        public String getEventId() {
+            return eventId;
+        }
+
+        public String getParentId() {
+            return parentId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Service which emitted the event.
+         */
+        public String getService() {
+            return service;
+        }
+
+        public long getPublishedAt() {
+            return publishedAt;
+        }
+
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+
+        /**
+         * @return Time from publishing to receiving the event, -1 if the publish time is unknown.
+         */
+        public long getTransitMillis() {
+            return publishedAt > 0 ? receivedAt - publishedAt : -1;
+        }
+
+        public long getHandlerNanos() {
+            return handlerNanos;
+        }
+
+        @Override
+        public String toString() {
+            return name + " from " + service
+                + " transit " + getTransitMillis() + " ms"
+                + " handler " + TimeUnit.NANOSECONDS.toMicros(handlerNanos) + " us"
+                + " event " + eventId
+                + " parent " + parentId;
+        }
+    }
+}
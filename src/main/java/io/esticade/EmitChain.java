@@ -1,27 +1,31 @@
 package io.esticade;
 
 import io.esticade.driver.Connector;
+import io.esticade.driver.HashedWheelTimer;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class EmitChain {
-    private final ServiceParams serviceParams;
     private final Connector connector;
+    private final ReplyListener replies;
     private final Event emittedEvent;
+    private final Map<String, List<Consumer<Event>>> handlers = new ConcurrentHashMap<>();
 
-    private int timeout = 60000;
-    private List<String> cTags = new ArrayList<>();
+    private int timeout = Service.DEFAULT_TIMEOUT;
 
     private Consumer<Event> timeOutCallback;
+    private volatile HashedWheelTimer.Timeout scheduledTimeout;
 
-    EmitChain(String eventName, Object payload, ServiceParams serviceParams, Connector connector) {
-        this.emittedEvent = new Event(serviceParams, eventName, payload);
-        this.serviceParams = serviceParams;
+    EmitChain(String eventName, Object payload, ServiceParams serviceParams, Connector connector, ReplyListener replies) {
+        this.emittedEvent = new Event(serviceParams, eventName, payload, serviceParams.chainBlock);
         this.connector = connector;
+        this.replies = replies;
     }
 
     /**
@@ -34,15 +38,17 @@ public class EmitChain {
      */
 
     public EmitChain on(String eventName, Consumer<Event> callback) {
-        cTags.add(connector.registerListener(emittedEvent.correlationBlock + "." + eventName, null, ev -> {
-            Event event = new Event(serviceParams, ev);
-            if(event.correlationId.equals(emittedEvent.correlationId)) {
-                callback.accept(event);
-            }
-        }));
+        handlers.computeIfAbsent(eventName, name -> new CopyOnWriteArrayList<>()).add(callback);
         return this;
     }
 
+    void deliver(Event event) {
+        List<Consumer<Event>> callbacks = handlers.get(event.name);
+        if(callbacks != null) {
+            callbacks.forEach(callback -> callback.accept(event));
+        }
+    }
+
     /**
      * Trigger the event chain.
      *
@@ -50,22 +56,32 @@ public class EmitChain {
      * listeners are finalized.</p>
      */
     public void execute() {
-        Timer timer = connector.getTimer();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                terminate(timer);
-                if(timeOutCallback != null){
-                    timeOutCallback.accept(emittedEvent);
-                }
-            }
-        }, timeout);
+        replies.register(emittedEvent.correlationId, this);
+        scheduledTimeout = connector.getTimer().schedule(this::expire, timeout, TimeUnit.MILLISECONDS);
         connector.emit(emittedEvent);
     }
 
-    private void terminate(Timer timer) {
-        connector.clearTimer(timer);
-        cTags.forEach((tag) -> connector.deleteListener(tag));
+    private void expire() {
+        replies.unregister(emittedEvent.correlationId, this);
+        Consumer<Event> callback = timeOutCallback;
+        if(callback != null){
+            // The timer is shared by the whole connection, the callback must not hold it up.
+            CompletableFuture.runAsync(() -> callback.accept(emittedEvent));
+        }
+    }
+
+    /**
+     * Finish the chain before the timeout.
+     *
+     * <p>No more events are delivered to the handlers of the chain and the timeout callback is not called. Call this
+     * once all the expected events have been received, so the chain does not stay around until the timeout.</p>
+     */
+    public void terminate() {
+        replies.unregister(emittedEvent.correlationId, this);
+        HashedWheelTimer.Timeout pendingTimeout = scheduledTimeout;
+        if(pendingTimeout != null) {
+            pendingTimeout.cancel();
+        }
     }
 
     /**
@@ -80,6 +96,9 @@ public class EmitChain {
 
     /**
      * Register a callback which is called once the emit chain times out.
+     *
+     * <p>The callback runs on a thread of the common fork join pool.</p>
+     *
      * @param callback - Callback function that will be called when the chain times out. Argument is the original event emitted.
      * @return Current chain
      */
@@ -3,12 +3,22 @@ package io.esticade;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.esticade.driver.ConnectionFactory;
+import io.esticade.driver.EventEnvelope;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class Event {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectWriter writer = mapper.writerFor(Event.class);
+    private static final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    static final ObjectReader TREE_READER = readerFor(JsonNode.class);
+
     /**
      * Correlation ID used for connecting events into chains.
      */
@@ -45,8 +55,13 @@ public final class Event {
     public final Object body;
 
     private ServiceParams serviceParams;
+    private final String routingKey;
 
     private Event(ServiceParams serviceParams, String eventId, String name, Object payload, String correlationId, String correlationBlock, String parentId){
+        this(serviceParams, eventId, name, payload, correlationId, correlationBlock, parentId, serviceParams.serviceName);
+    }
+
+    private Event(ServiceParams serviceParams, String eventId, String name, Object payload, String correlationId, String correlationBlock, String parentId, String service){
         this.name = name;
         this.body = payload;
         this.serviceParams = serviceParams;
@@ -54,15 +69,20 @@ public final class Event {
         this.correlationId = correlationId;
         this.correlationBlock = correlationBlock;
         this.parentId = parentId;
-        this.service = serviceParams.serviceName;
+        this.service = service;
+        this.routingKey = serviceParams.routingKey(correlationBlock, name);
     }
 
     Event(ServiceParams serviceParams, String name, Object payload){
-        this(serviceParams, UUID.randomUUID().toString(), name, payload, UUID.randomUUID().toString(), serviceParams.correlationBlock, null);
+        this(serviceParams, name, payload, serviceParams.correlationBlock);
+    }
+
+    Event(ServiceParams serviceParams, String name, Object payload, String correlationBlock){
+        this(serviceParams, serviceParams.nextId(), name, payload, serviceParams.nextId(), correlationBlock, null);
     }
 
     private Event(ServiceParams serviceParams, String name, Object payload, Event parentEvent){
-        this(serviceParams, UUID.randomUUID().toString(), name, payload, parentEvent.correlationId, parentEvent.correlationBlock, parentEvent.eventId);
+        this(serviceParams, serviceParams.nextId(), name, payload, parentEvent.correlationId, parentEvent.correlationBlock, parentEvent.eventId);
     }
 
     Event(ServiceParams serviceParams, JsonNode obj) {
@@ -73,11 +93,35 @@ public final class Event {
             toAppropriateType(obj.get("body")),
             obj.get("correlationId").asText(),
             obj.get("correlationBlock").asText(),
-            null
+            obj.path("parentId").asText(null),
+            obj.path("service").asText(null)
+        );
+    }
+
+    Event(ServiceParams serviceParams, EventEnvelope envelope) {
+        this(
+            serviceParams,
+            envelope.eventId,
+            envelope.name,
+            envelope.body instanceof JsonNode ? toAppropriateType((JsonNode) envelope.body) : envelope.body,
+            envelope.correlationId,
+            envelope.correlationBlock,
+            envelope.parentId,
+            envelope.service
         );
     }
 
+    /**
+     * Reader binding event bodies into the given type, created once per type.
+     */
+    static ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, mapper::readerFor);
+    }
+
     private static Object toAppropriateType(JsonNode body) {
+        if(body == null) {
+            return null;
+        }
         switch(body.getNodeType()){
             case BOOLEAN: return body.asBoolean();
             case NULL: return null;
@@ -101,14 +145,21 @@ public final class Event {
     @Override
     public String toString() {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.writeValueAsString(this);
+            return writer.writeValueAsString(this);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Routing key the event is published with.
+     * @return Correlation block and event name joined with a dot.
+     */
+    public String routingKey() {
+        return routingKey;
+    }
+
     /**
      * Emit an event with payload
      *
@@ -137,6 +188,37 @@ public final class Event {
         emit(eventName, null);
     }
 
+    /**
+     * Emit an event with payload and wait for the delivery confirmation.
+     *
+     * <p>Same as {@link #emit(String, Object)}, except the returned future is completed once the event network has
+     * confirmed the event.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @param payload Serializable java object that will be sent to the event network.
+     * @return Future completed with the emitted event once it is confirmed.
+     */
+    public CompletableFuture<Event> emitAsync(String eventName, Object payload) {
+        try {
+            return ConnectionFactory.getConnection()
+                .emitAsync(new Event(serviceParams, eventName, payload, this));
+        } catch (IOException e) {
+            CompletableFuture<Event> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Emit event without payload and wait for the delivery confirmation.
+     *
+     * @param eventName Name of the event as plain text string
+     * @return Future completed with the emitted event once it is confirmed.
+     */
+    public CompletableFuture<Event> emitAsync(String eventName) {
+        return emitAsync(eventName, null);
+    }
+
     /**
      * Map received event json to a java bean.
      *
@@ -144,7 +226,9 @@ public final class Event {
      * @return Event body mapped into a bean.
      */
     public <T> T bodyAs(Class<T> testBeanClass) {
-        ObjectMapper mapper = new ObjectMapper();
+        if(testBeanClass.isInstance(body) && !(body instanceof JsonNode)) {
+            return testBeanClass.cast(body);
+        }
         return mapper.convertValue(body, testBeanClass);
     }
 }
@@ -0,0 +1,51 @@
+package io.esticade;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors suitable for running event handlers, see {@link ListenerOptions#executor(java.util.concurrent.Executor)}.
+ */
+public final class HandlerExecutors {
+    private HandlerExecutors() {
+    }
+
+    /**
+     * Executor starting a virtual thread per handled event.
+     *
+     * <p>Virtual threads are only available from Java 21 on. On older runtimes a cached pool of daemon threads is
+     * returned instead.</p>
+     *
+     * @return Executor for blocking handlers
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("esticade-handler-"));
+        }
+    }
+
+    /**
+     * Fixed size pool of daemon threads.
+     *
+     * @param threads Number of threads
+     * @return Executor for CPU bound handlers
+     */
+    public static ExecutorService fixed(int threads) {
+        return Executors.newFixedThreadPool(threads, daemonThreads("esticade-handler-"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package io.esticade;
+
+import io.esticade.driver.Hashing;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring assigning keys to members.
+ *
+ * <p>Every member is placed on the ring at a number of points derived from its name, a key belongs to the member of
+ * the first point at or after the hash of the key. Adding or removing a member only moves the keys between that member
+ * and its neighbours, roughly 1/n of them, the rest stay where they were.</p>
+ */
+final class HashRing {
+    private final TreeMap<Long, String> points = new TreeMap<>();
+
+    /**
+     * @param members Names of the members, the same on every instance building the ring
+     * @param virtualNodes Points per member, more points spread the keys more evenly
+     */
+    HashRing(Collection<String> members, int virtualNodes) {
+        for (String member : members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.putIfAbsent(Hashing.hash64(member + "#" + i), member);
+            }
+        }
+    }
+
+    /**
+     * @return Member the key belongs to, null if the ring is empty.
+     */
+    String owner(String key) {
+        if(points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(Hashing.hash64(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+}
@@ -0,0 +1,14 @@
+package io.esticade;
+
+/**
+ * Source of the event and correlation IDs, see {@link Service#setIdGenerator(IdGenerator)}.
+ *
+ * <p>IDs are sent as plain strings, any unique string works. Implementations must be thread safe.</p>
+ */
+@FunctionalInterface
+public interface IdGenerator {
+    /**
+     * @return New unique ID
+     */
+    String nextId();
+}
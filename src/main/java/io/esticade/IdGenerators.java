@@ -0,0 +1,81 @@
+package io.esticade;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ready made {@link IdGenerator} implementations.
+ */
+public final class IdGenerators {
+    private static final IdGenerator TIME_ORDERED = new TimeOrdered(ThreadLocalRandom.current().nextInt(1 << TimeOrdered.NODE_BITS));
+
+    private IdGenerators() {
+    }
+
+    /**
+     * Time ordered IDs in the UUID version 7 layout, the default.
+     *
+     * <p>The IDs start with the millisecond they were created in, followed by a prefix random per process and random
+     * bits from {@link ThreadLocalRandom}. Nothing is shared between the threads generating IDs and nothing blocks on
+     * entropy. IDs of later milliseconds sort after the earlier ones, both as strings and as UUIDs.</p>
+     *
+     * @return Generator shared by the whole process
+     */
+    public static IdGenerator timeOrdered() {
+        return TIME_ORDERED;
+    }
+
+    /**
+     * Random IDs from {@link UUID#randomUUID()}, as generated by the earlier versions.
+     *
+     * @return Generator of version 4 UUIDs
+     */
+    public static IdGenerator random() {
+        return () -> UUID.randomUUID().toString();
+    }
+
+    static final class TimeOrdered implements IdGenerator {
+        static final int NODE_BITS = 16;
+
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final long node;
+
+        TimeOrdered(int node) {
+            this.node = (long) node << (62 - NODE_BITS);
+        }
+
+        @Override
+        public String nextId() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            // 48 bits of milliseconds, version 7 and 12 random bits
+            long msb = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextInt() & 0x0fffL);
+            // IETF variant, node prefix and 46 random bits
+            long lsb = 0x8000000000000000L | node | (random.nextLong() & ((1L << (62 - NODE_BITS)) - 1));
+
+            return format(msb, lsb);
+        }
+
+        static String format(long msb, long lsb) {
+            char[] chars = new char[36];
+            hex(chars, 0, msb >>> 32, 8);
+            chars[8] = '-';
+            hex(chars, 9, msb >>> 16, 4);
+            chars[13] = '-';
+            hex(chars, 14, msb, 4);
+            chars[18] = '-';
+            hex(chars, 19, lsb >>> 48, 4);
+            chars[23] = '-';
+            hex(chars, 24, lsb, 12);
+            return new String(chars);
+        }
+
+        private static void hex(char[] chars, int offset, long value, int digits) {
+            for (int i = offset + digits - 1; i >= offset; i--) {
+                chars[i] = HEX[(int) (value & 0xf)];
+                value >>>= 4;
+            }
+        }
+    }
+}
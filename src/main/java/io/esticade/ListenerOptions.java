@@ -0,0 +1,147 @@
+package io.esticade;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Tuning options of an event handler.
+ *
+ * <p>Options left unset fall back to the connector configuration. Options are only applied by connectors to which
+ * they are relevant, the in-memory connector for example has no acknowledgements to batch.</p>
+ */
+public final class ListenerOptions {
+    private int prefetch;
+    private int ackBatchSize;
+    private long ackIntervalMSec;
+    private Executor executor;
+    private boolean orderedByCorrelation;
+    private long dedupWindowMSec;
+    private int dedupCapacity;
+
+    public ListenerOptions() {
+    }
+
+    private ListenerOptions(ListenerOptions options) {
+        this.prefetch = options.prefetch;
+        this.ackBatchSize = options.ackBatchSize;
+        this.ackIntervalMSec = options.ackIntervalMSec;
+        this.executor = options.executor;
+        this.orderedByCorrelation = options.orderedByCorrelation;
+        this.dedupWindowMSec = options.dedupWindowMSec;
+        this.dedupCapacity = options.dedupCapacity;
+    }
+
+    /**
+     * Limit the number of events delivered to the handler before they are acknowledged.
+     * @param prefetch Maximum number of unacknowledged events, 0 to use the configured default.
+     * @return Current options
+     */
+    public ListenerOptions prefetch(int prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Acknowledge handled events in batches instead of one by one.
+     *
+     * <p>Events are acknowledged once the given number of events is handled or the given time has passed since the
+     * first unacknowledged event was handled, whichever comes first. Keep the batch size below the prefetch, as the
+     * event network will not deliver more events while the prefetch is exhausted.</p>
+     *
+     * @param size Number of events to acknowledge at once, 0 to use the configured default.
+     * @param intervalMSec Maximum time in milliseconds an event may wait for acknowledgement, 0 to use the configured
+     *                     default.
+     * @return Current options
+     */
+    public ListenerOptions ackBatch(int size, long intervalMSec) {
+        this.ackBatchSize = size;
+        this.ackIntervalMSec = intervalMSec;
+        return this;
+    }
+
+    /**
+     * Run the handler on the given executor instead of the thread delivering the events.
+     *
+     * <p>The event is acknowledged once the handler has finished. Use {@link #prefetch(int)} to limit the number of
+     * events handled at the same time. See {@link HandlerExecutors} for ready made executors.</p>
+     *
+     * @param executor Executor running the handler
+     * @return Current options
+     */
+    public ListenerOptions executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Handle events of the same chain one at a time, in the order they arrive.
+     *
+     * <p>Only relevant together with {@link #executor(Executor)}. Events with the same correlation ID are never
+     * handled in parallel, events of different chains still are.</p>
+     *
+     * @return Current options
+     */
+    public ListenerOptions orderedByCorrelation() {
+        this.orderedByCorrelation = true;
+        return this;
+    }
+
+    /**
+     * Drop the events the handler has already received, by their event ID.
+     *
+     * <p>Events may be delivered more than once after reconnects, when acknowledgements are lost or when emitted
+     * events are replayed from the outbound journal. Duplicates are acknowledged without running the handler.</p>
+     *
+     * <p>The IDs are remembered exactly for the window and approximately for as long again, but at most for the given
+     * number of events per half window. Memory use is fixed by the capacity, roughly 40 to 70 bytes per event.</p>
+     *
+     * @param windowMSec Time in milliseconds the event IDs are remembered for
+     * @param capacity Number of event IDs remembered per half window
+     * @return Current options
+     */
+    public ListenerOptions deduplicate(long windowMSec, int capacity) {
+        this.dedupWindowMSec = windowMSec;
+        this.dedupCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Copy of the options with the executor filled in, unless one is already set.
+     */
+    ListenerOptions withDefaultExecutor(Executor defaultExecutor) {
+        if(executor != null || defaultExecutor == null) {
+            return this;
+        }
+        return new ListenerOptions(this).executor(defaultExecutor);
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public long getAckIntervalMSec() {
+        return ackIntervalMSec;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public boolean isOrderedByCorrelation() {
+        return orderedByCorrelation;
+    }
+
+    /**
+     * @return Time the event IDs are remembered for deduplication, 0 if not deduplicating.
+     */
+    public long getDedupWindowMSec() {
+        return dedupWindowMSec;
+    }
+
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+}
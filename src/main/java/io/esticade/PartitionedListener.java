@@ -0,0 +1,171 @@
+package io.esticade;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.esticade.driver.Connector;
+import io.esticade.driver.Delivery;
+import io.esticade.driver.EventEnvelope;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Divides the events between the instances of a service by the key of the event.
+ *
+ * <p>Every instance receives all the events on a queue of its own and only handles the keys the consistent hash ring
+ * assigns to it. The instances announce themselves with heartbeats sent as events to each other, an instance missing
+ * {@link #EXPIRY_HEARTBEATS} heartbeats in a row is dropped from the ring and its keys move to the remaining ones.
+ * Instances leaving through {@link #leave()} are dropped at once.</p>
+ *
+ * <p>While the instances learn about a change, a key may briefly be handled by two instances or by none.</p>
+ */
+class PartitionedListener {
+    static final long HEARTBEAT_MSEC = 1000;
+    static final int EXPIRY_HEARTBEATS = 3;
+    static final int VIRTUAL_NODES = 128;
+
+    private static final String MEMBER = "member";
+    private static final String LEAVING = "leaving";
+
+    private final ServiceParams params;
+    private final Connector connector;
+    private final String eventName;
+    private final String membershipEvent;
+    private final Function<Event, String> keyExtractor;
+    private final Consumer<Event> callback;
+
+    private final String memberId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, Long> members = new ConcurrentHashMap<>();
+    private volatile HashRing ring;
+    private volatile boolean active = true;
+
+    PartitionedListener(ServiceParams params, Connector connector, String eventName, Function<Event, String> keyExtractor, Consumer<Event> callback) {
+        this.params = params;
+        this.connector = connector;
+        this.eventName = eventName;
+        this.membershipEvent = "esticade.partition." + eventName;
+        this.keyExtractor = keyExtractor;
+        this.callback = callback;
+        this.ring = new HashRing(Collections.singleton(memberId), VIRTUAL_NODES);
+    }
+
+    /**
+     * Join the ring and start receiving the events.
+     */
+    void register() {
+        // Learn about the other instances before taking any events, they answer the first heartbeat right away.
+        connector.registerListener("*." + membershipEvent, null, new ListenerOptions(), this::membership);
+        heartbeat(false);
+        connector.registerListener("*." + eventName, null, new ListenerOptions(), this::dispatch);
+        scheduleHeartbeat();
+    }
+
+    /**
+     * Stop handling the events and let the other instances take over the keys of this one.
+     */
+    void leave() {
+        if(active) {
+            active = false;
+            heartbeat(true);
+        }
+    }
+
+    /**
+     * @return True if the key belongs to this instance.
+     */
+    boolean owns(String key) {
+        return memberId.equals(ring.owner(key != null ? key : ""));
+    }
+
+    private void dispatch(Delivery delivery) {
+        EventEnvelope envelope;
+        try {
+            envelope = delivery.envelope(Event.TREE_READER, JsonNode.class);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        Event event = new Event(params, envelope);
+        if(active && owns(keyExtractor.apply(event))) {
+            params.handle(delivery, event, callback, (ev, eventCallback) -> eventCallback.accept(ev));
+        }
+    }
+
+    private void membership(Delivery delivery) {
+        EventEnvelope envelope;
+        try {
+            envelope = delivery.envelope(Event.TREE_READER, JsonNode.class);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if(!params.serviceName.equals(envelope.service) || !(envelope.body instanceof JsonNode)) {
+            return;
+        }
+        JsonNode body = (JsonNode) envelope.body;
+        String member = body.path(MEMBER).asText(null);
+        if(member == null || member.equals(memberId)) {
+            return;
+        }
+
+        if(body.path(LEAVING).asBoolean()) {
+            if(members.remove(member) != null) {
+                rebuild();
+            }
+        } else if(members.put(member, System.nanoTime()) == null) {
+            rebuild();
+            // Answer the newcomer right away instead of leaving it alone with all the keys until the next heartbeat.
+            heartbeat(false);
+        }
+    }
+
+    private void scheduleHeartbeat() {
+        connector.getTimer().schedule(() -> {
+            if(!active) {
+                return;
+            }
+            // Emitting may wait for the outbound queue, which must not hold up the timer thread.
+            CompletableFuture.runAsync(() -> {
+                expireMembers();
+                heartbeat(false);
+            });
+            scheduleHeartbeat();
+        }, HEARTBEAT_MSEC, TimeUnit.MILLISECONDS);
+    }
+
+    private void expireMembers() {
+        long expiry = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MSEC * EXPIRY_HEARTBEATS);
+        if(members.entrySet().removeIf(member -> member.getValue() - expiry < 0)) {
+            rebuild();
+        }
+    }
+
+    private synchronized void rebuild() {
+        List<String> live = new ArrayList<>(members.keySet());
+        live.add(memberId);
+        ring = new HashRing(live, VIRTUAL_NODES);
+    }
+
+    private void heartbeat(boolean leaving) {
+        ObjectNode body = JsonNodeFactory.instance.objectNode()
+            .put(MEMBER, memberId)
+            .put(LEAVING, leaving);
+        try {
+            connector.emit(new Event(params, membershipEvent, body));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.esticade;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.esticade.driver.Connector;
+import io.esticade.driver.Delivery;
+import io.esticade.driver.EventEnvelope;
+
+import java.io.IOException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Single listener shared by all the emit chains of a service.
+ *
+ * <p>Chains emit their events in a correlation block of their own, the listener is bound to that block once and
+ * hands the received events over to the chain waiting for the correlation ID. Running a chain is a map insert and
+ * removal instead of declaring, binding and cancelling a queue for every awaited event.</p>
+ */
+class ReplyListener {
+    private static final BiConsumer<Event, EmitChain> DELIVER = (event, chain) -> chain.deliver(event);
+
+    private final ServiceParams params;
+    private final Connector connector;
+    private final ConcurrentMap<String, EmitChain> chains = new ConcurrentHashMap<>();
+
+    private volatile boolean registered = false;
+
+    ReplyListener(ServiceParams params, Connector connector) {
+        this.params = params;
+        this.connector = connector;
+    }
+
+    void register(String correlationId, EmitChain chain) {
+        chains.put(correlationId, chain);
+        if(!registered) {
+            registerListener();
+        }
+    }
+
+    void unregister(String correlationId, EmitChain chain) {
+        chains.remove(correlationId, chain);
+    }
+
+    private synchronized void registerListener() {
+        if(!registered) {
+            connector.registerListener(params.chainBlock + ".#", null, params.listenerOptions(new ListenerOptions()), this::dispatch);
+            registered = true;
+        }
+    }
+
+    private void dispatch(Delivery delivery) {
+        EventEnvelope envelope;
+        try {
+            envelope = delivery.envelope(Event.TREE_READER, JsonNode.class);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        EmitChain chain = chains.get(envelope.correlationId);
+        if(chain != null) {
+            params.handle(delivery, new Event(params, envelope), chain, DELIVER);
+        }
+    }
+}
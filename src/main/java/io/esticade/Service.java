@@ -1,16 +1,35 @@
 package io.esticade;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
 import io.esticade.driver.ConnectionFactory;
 import io.esticade.driver.Connector;
+import io.esticade.driver.Delivery;
+import io.esticade.driver.EventEnvelope;
+import io.esticade.driver.Metrics;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Main class for working with the Esticade.
  */
 public class Service {
+    static final int DEFAULT_TIMEOUT = 60000;
+
     private ServiceParams params;
     private Connector connector;
+    private ReplyListener replies;
+    private final List<PartitionedListener> partitions = new CopyOnWriteArrayList<>();
 
     /**
      * Create a new service connector.
@@ -21,6 +40,7 @@ public class Service {
     public Service(String serviceName) throws IOException {
         params = new ServiceParams(serviceName);
         connector = ConnectionFactory.getConnection();
+        replies = new ReplyListener(params, connector);
     }
 
     /**
@@ -31,6 +51,8 @@ public class Service {
      *
      * @param eventName Name of the event as plain text string
      * @param payload Serializable java object that will be sent to the event network.
+     * @throws RejectedExecutionException If the outbound queue is full and its overflow policy
+     * rejects the event. The event then reaches no listener, local ones included.
      */
     public void emit(String eventName, Object payload){
         connector.emit(new Event(params, eventName, payload));
@@ -43,11 +65,40 @@ public class Service {
      * please use {@link Event#emit(String)}</p>
      *
      * @param eventName Name of the event as plain text string
+     * @throws RejectedExecutionException If the outbound queue is full and its overflow policy
+     * rejects the event.
      */
     public void emit(String eventName) {
         connector.emit(new Event(params, eventName, null));
     }
 
+    /**
+     * Emit message with payload and wait for the delivery confirmation.
+     *
+     * <p>Same as {@link #emit(String, Object)}, except the returned future is completed once the event network has
+     * confirmed the event, or completed exceptionally if the event was rejected or the connection was lost before
+     * the confirmation arrived. Any number of events can wait for the confirmation at the same time.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @param payload Serializable java object that will be sent to the event network.
+     * @return Future completed with the emitted event once it is confirmed.
+     */
+    public CompletableFuture<Event> emitAsync(String eventName, Object payload) {
+        return connector.emitAsync(new Event(params, eventName, payload));
+    }
+
+    /**
+     * Emit message without payload and wait for the delivery confirmation.
+     *
+     * <p>Same as {@link #emitAsync(String, Object)} except for events without payload.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @return Future completed with the emitted event once it is confirmed.
+     */
+    public CompletableFuture<Event> emitAsync(String eventName) {
+        return emitAsync(eventName, null);
+    }
+
     /**
      * Register shared persistent event handler.
      *
@@ -59,16 +110,232 @@ public class Service {
      * @param callback Callback with single argument that will be called once the event is received.
      */
     public void on(String eventName, Consumer<Event> callback) {
-        connector.registerListener("*." + eventName, params.serviceName + "-" + eventName, obj -> callback.accept(new Event(params, obj)));
+        on(eventName, new ListenerOptions(), callback);
+    }
+
+    /**
+     * Register shared persistent event handler with tuned delivery.
+     *
+     * <p>Same as {@link #on(String, Consumer)}, with the prefetch and acknowledgement of the events controlled by
+     * the given options.</p>
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param options Delivery options of the handler.
+     * @param callback Callback with single argument that will be called once the event is received.
+     */
+    public void on(String eventName, ListenerOptions options, Consumer<Event> callback) {
+        connector.registerListener("*." + eventName, params.serviceName + "-" + eventName, params.listenerOptions(options), events(callback));
+    }
+
+    /**
+     * Register shared persistent event handler receiving the body as a bean.
+     *
+     * <p>Same as {@link #on(String, Consumer)}, except the body is bound straight from the received bytes into the
+     * given type, skipping the intermediate tree and the conversion done by {@link Event#bodyAs(Class)}.</p>
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param type Class the body of the event is bound to
+     * @param callback Callback receiving the event and its body.
+     * @param <T> Type of the event body
+     */
+    public <T> void on(String eventName, Class<T> type, BiConsumer<Event, T> callback) {
+        on(eventName, new ListenerOptions(), type, callback);
+    }
+
+    /**
+     * Register shared persistent event handler receiving the body as a bean, with tuned delivery.
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param options Delivery options of the handler.
+     * @param type Class the body of the event is bound to
+     * @param callback Callback receiving the event and its body.
+     * @param <T> Type of the event body
+     */
+    public <T> void on(String eventName, ListenerOptions options, Class<T> type, BiConsumer<Event, T> callback) {
+        ObjectReader reader = Event.readerFor(type);
+
+        connector.registerListener("*." + eventName, params.serviceName + "-" + eventName, params.listenerOptions(options), delivery -> {
+            EventEnvelope envelope;
+            try {
+                envelope = delivery.envelope(reader, type);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            params.handle(delivery, new Event(params, envelope), type.cast(envelope.body), callback);
+        });
+    }
+
+    /**
+     * Register shared persistent event handler receiving the events in batches.
+     *
+     * <p>Same as {@link #on(String, Consumer)}, except the events are collected until there are the given number of
+     * them or the given time has passed since the first one arrived, and the callback is called once for the whole
+     * batch. The events of a batch are acknowledged together once the callback returns, so a handler writing them in
+     * bulk does not lose any if the service stops in between. Batches are handled one at a time, in the order they
+     * were collected.</p>
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param maxSize Maximum number of events in a batch.
+     * @param maxWait Maximum time an event waits for its batch to fill.
+     * @param callback Callback receiving the events of a batch.
+     */
+    public void onBatch(String eventName, int maxSize, Duration maxWait, Consumer<List<Event>> callback) {
+        onBatch(eventName, new ListenerOptions(), maxSize, maxWait, callback);
+    }
+
+    /**
+     * Register shared persistent event handler receiving the events in batches, with tuned delivery.
+     *
+     * <p>The prefetch is raised to at least twice the batch size, so the next batch can fill while the current one is
+     * handled. The acknowledgement batch options do not apply, every batch is acknowledged once handled.</p>
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param options Delivery options of the handler.
+     * @param maxSize Maximum number of events in a batch.
+     * @param maxWait Maximum time an event waits for its batch to fill.
+     * @param callback Callback receiving the events of a batch.
+     */
+    public void onBatch(String eventName, ListenerOptions options, int maxSize, Duration maxWait, Consumer<List<Event>> callback) {
+        connector.registerBatchListener("*." + eventName, params.serviceName + "-" + eventName, params.listenerOptions(options), maxSize, maxWait.toMillis(), deliveries -> {
+            List<Event> events = new ArrayList<>(deliveries.size());
+            for (Delivery delivery : deliveries) {
+                try {
+                    events.add(new Event(params, delivery.envelope(Event.TREE_READER, JsonNode.class)));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if(!events.isEmpty()) {
+                callback.accept(events);
+            }
+        });
+    }
+
+    /**
+     * Register event handler dividing the events between the instances of the service by key.
+     *
+     * <p>Unlike {@link #on(String, Consumer)}, which divides the events round-robin, the events with the same key are
+     * always handled by the same instance as long as the instances stay the same, so the instance can cache the state
+     * of the key and handle its events in order without locking. Keys are assigned to the live instances with
+     * consistent hashing, when an instance joins or leaves only the keys moving to or from it change instance.</p>
+     *
+     * <p>Every instance receives all the events and skips the keys of the others, so the queues are not kept while the
+     * instance is inactive, like with {@link #alwaysOn(String, Consumer)}. The handler always runs on the thread
+     * delivering the events, to keep the events of a key in order. The instances find each other with heartbeats sent
+     * over the event network every second and drop an instance which has not sent any for three seconds. Shutting the
+     * service down hands its keys over at once. While a change spreads, an event may be handled by two instances or
+     * by none.</p>
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param keyExtractor Function returning the key of the event, such as the ID of the entity it concerns.
+     * @param callback Callback with single argument that will be called once the event is received.
+     */
+    public void onPartitioned(String eventName, Function<Event, String> keyExtractor, Consumer<Event> callback) {
+        PartitionedListener listener = new PartitionedListener(params, connector, eventName, keyExtractor, callback);
+        partitions.add(listener);
+        listener.register();
+    }
+
+    private Consumer<Delivery> events(Consumer<Event> callback) {
+        BiConsumer<Event, Consumer<Event>> handler = (event, eventCallback) -> eventCallback.accept(event);
+
+        return delivery -> {
+            EventEnvelope envelope;
+            try {
+                envelope = delivery.envelope(Event.TREE_READER, JsonNode.class);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            params.handle(delivery, new Event(params, envelope), callback, handler);
+        };
+    }
+
+    /**
+     * Run the handlers of this service on the given executor.
+     *
+     * <p>Applies to the handlers registered after the call which do not have an executor of their own set in
+     * {@link ListenerOptions}. By default handlers run on the thread delivering the events, so a slow handler
+     * delays all the others.</p>
+     *
+     * @param executor Executor running the handlers, null to run them on the delivering thread.
+     */
+    public void setExecutor(Executor executor) {
+        params.executor = executor;
+    }
+
+    /**
+     * Start recording the events handled by this service as hops of their chains.
+     *
+     * <p>The hops are kept in a ring buffer allocated outside the heap, about 256 bytes per hop, the oldest hops are
+     * overwritten once it is full. Calling it again replaces the profiler with an empty one.</p>
+     *
+     * @param capacity Number of hops kept
+     * @return Profiler for finding the slowest chains
+     * @throws IllegalArgumentException If the capacity is not positive or the buffer would not fit in 2 GB
+     */
+    public ChainProfiler enableChainProfiler(int capacity) {
+        ChainProfiler profiler = new ChainProfiler(capacity);
+        params.profiler = profiler;
+        return profiler;
+    }
+
+    /**
+     * @return Chain profiler of this service, null unless enabled.
+     */
+    public ChainProfiler getChainProfiler() {
+        return params.profiler;
+    }
+
+    /**
+     * Counters and timings of the events going through the connection of this service.
+     *
+     * <p>The same metrics are published over JMX under <code>io.esticade:type=Metrics,connector=N</code>, where N
+     * numbers the connections of the process starting from 1.</p>
+     *
+     * @return Metrics of the connection
+     */
+    public Metrics getMetrics() {
+        return connector.getMetrics();
+    }
+
+    /**
+     * Generate the IDs of the events emitted by this service with the given generator.
+     *
+     * <p>Defaults to {@link IdGenerators#timeOrdered()}. Use {@link IdGenerators#random()} to keep the random UUIDs
+     * of the earlier versions.</p>
+     *
+     * @param idGenerator Generator of the event and correlation IDs.
+     */
+    public void setIdGenerator(IdGenerator idGenerator) {
+        params.idGenerator = idGenerator;
     }
 
     /**
      * Disconnect service from the event network
      */
     public void shutdown() {
+        partitions.forEach(PartitionedListener::leave);
         ConnectionFactory.shutdown();
     }
 
+    /**
+     * Disconnect service from the event network gracefully.
+     *
+     * <p>Stops receiving new events, waits for the handlers still running to finish and for the emitted events to be
+     * confirmed, then closes the connection. All the handled events are acknowledged before the connection is
+     * closed.</p>
+     *
+     * @param timeout Maximum time to wait for the work in flight to drain.
+     * @return False if the timeout passed before everything drained, the connection is closed regardless.
+     * @throws InterruptedException If interrupted while waiting, the connection is closed regardless.
+     */
+    public boolean shutdown(Duration timeout) throws InterruptedException {
+        partitions.forEach(PartitionedListener::leave);
+        return ConnectionFactory.shutdown(timeout);
+    }
+
     /**
      * Register temporary non-shared event handler.
      *
@@ -79,7 +346,21 @@ public class Service {
      * @param callback Callback with single argument that will be called once the event is received.
      */
     public void alwaysOn(String eventName, Consumer<Event> callback) {
-        connector.registerListener("*." + eventName, null, obj -> callback.accept(new Event(params, obj)));
+        alwaysOn(eventName, new ListenerOptions(), callback);
+    }
+
+    /**
+     * Register temporary non-shared event handler with tuned delivery.
+     *
+     * <p>Same as {@link #alwaysOn(String, Consumer)}, with the prefetch and acknowledgement of the events controlled
+     * by the given options.</p>
+     *
+     * @param eventName Name of the event to listen to as a plain text string.
+     * @param options Delivery options of the handler.
+     * @param callback Callback with single argument that will be called once the event is received.
+     */
+    public void alwaysOn(String eventName, ListenerOptions options, Consumer<Event> callback) {
+        connector.registerListener("*." + eventName, null, params.listenerOptions(options), events(callback));
     }
 
     /**
@@ -96,7 +377,7 @@ public class Service {
      * @return Emission chain object, allowing to register event handlers via fluent interface.
      */
     public EmitChain emitChain(String eventName, Object payload) {
-        return new EmitChain(eventName, payload, params, connector);
+        return new EmitChain(eventName, payload, params, connector, replies);
     }
 
     /**
@@ -107,6 +388,123 @@ public class Service {
      * @return Emission chain object, allowing to register event handlers via fluent interface.
      */
     public EmitChain emitChain(String eventName) {
-        return new EmitChain(eventName, null, params, connector);
+        return new EmitChain(eventName, null, params, connector, replies);
+    }
+
+    /**
+     * Emit an event and wait for a single response caused by it.
+     *
+     * <p>Same as {@link #request(String, Object, String, Class, int)} with the default timeout of the emit chain.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @param payload Serializable java object that will be sent to the event network.
+     * @param responseEvent Name of the response event
+     * @param responseType Class the body of the response is mapped to
+     * @param <T> Type of the response body
+     * @return Future completed with the body of the first response.
+     */
+    public <T> CompletableFuture<T> request(String eventName, Object payload, String responseEvent, Class<T> responseType) {
+        return request(eventName, payload, responseEvent, responseType, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Emit an event and wait for a single response caused by it.
+     *
+     * <p>The returned future is completed with the body of the first response event of the chain, or completed
+     * exceptionally with {@link TimeoutException} if no response arrives in time. The chain is released as soon as
+     * the future completes, including when it is cancelled. A timed out future is completed on a thread of the common
+     * fork join pool, never on the timer of the connection.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @param payload Serializable java object that will be sent to the event network.
+     * @param responseEvent Name of the response event
+     * @param responseType Class the body of the response is mapped to
+     * @param timeoutMSec Time in milliseconds to wait for the response
+     * @param <T> Type of the response body
+     * @return Future completed with the body of the first response.
+     */
+    public <T> CompletableFuture<T> request(String eventName, Object payload, String responseEvent, Class<T> responseType, int timeoutMSec) {
+        CompletableFuture<T> response = new CompletableFuture<>();
+
+        EmitChain chain = emitChain(eventName, payload)
+            .on(responseEvent, ev -> {
+                try {
+                    response.complete(ev.bodyAs(responseType));
+                } catch (IllegalArgumentException e) {
+                    response.completeExceptionally(e);
+                }
+            })
+            .timeout(timeoutMSec, ev -> response.completeExceptionally(
+                new TimeoutException("No " + responseEvent + " received for " + eventName + " in " + timeoutMSec + " ms")
+            ));
+
+        response.whenComplete((result, error) -> chain.terminate());
+        chain.execute();
+
+        return response;
+    }
+
+    /**
+     * Emit an event and collect the responses caused by it, waiting for them for the default timeout.
+     *
+     * <p>See {@link #gather(String, Object, String, Class, int, int)}.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @param payload Serializable java object that will be sent to the event network.
+     * @param responseEvent Name of the response events
+     * @param responseType Class the bodies of the responses are mapped to
+     * @param count Number of responses to wait for
+     * @param <T> Type of the response body
+     * @return Future completed with the bodies of the responses in order of arrival.
+     */
+    public <T> CompletableFuture<List<T>> gather(String eventName, Object payload, String responseEvent, Class<T> responseType, int count) {
+        return gather(eventName, payload, responseEvent, responseType, count, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Emit an event and collect the responses caused by it.
+     *
+     * <p>The returned future is completed once the given number of responses has arrived or the timeout has passed,
+     * whichever comes first. On timeout the future is completed with the responses received so far, which may be
+     * none. The chain is released as soon as the future completes. A timed out future is completed on a thread of the
+     * common fork join pool, never on the timer of the connection.</p>
+     *
+     * @param eventName Name of the event as plain text string
+     * @param payload Serializable java object that will be sent to the event network.
+     * @param responseEvent Name of the response events
+     * @param responseType Class the bodies of the responses are mapped to
+     * @param count Number of responses to wait for
+     * @param timeoutMSec Time in milliseconds to wait for the responses
+     * @param <T> Type of the response body
+     * @return Future completed with the bodies of the responses in order of arrival.
+     */
+    public <T> CompletableFuture<List<T>> gather(String eventName, Object payload, String responseEvent, Class<T> responseType, int count, int timeoutMSec) {
+        CompletableFuture<List<T>> responses = new CompletableFuture<>();
+        List<T> received = new ArrayList<>(count);
+
+        EmitChain chain = emitChain(eventName, payload)
+            .on(responseEvent, ev -> {
+                try {
+                    T body = ev.bodyAs(responseType);
+                    synchronized (received) {
+                        received.add(body);
+                        if(received.size() >= count) {
+                            responses.complete(new ArrayList<>(received));
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    responses.completeExceptionally(e);
+                }
+            })
+            .timeout(timeoutMSec, ev -> {
+                synchronized (received) {
+                    responses.complete(new ArrayList<>(received));
+                }
+            });
+
+        responses.whenComplete((result, error) -> chain.terminate());
+        chain.execute();
+
+        return responses;
     }
 }
@@ -1,13 +1,79 @@
 package io.esticade;
 
-import java.util.UUID;
+import io.esticade.driver.Delivery;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
 
 class ServiceParams {
     final String serviceName;
     final String correlationBlock;
+    final String chainBlock;
+
+    private final ConcurrentMap<String, String> routingKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> chainRoutingKeys = new ConcurrentHashMap<>();
+
+    volatile Executor executor;
+    volatile IdGenerator idGenerator = IdGenerators.timeOrdered();
+    volatile ChainProfiler profiler;
 
     public ServiceParams(String serviceName) {
         this.serviceName = serviceName;
-        this.correlationBlock = UUID.randomUUID().toString();
+        this.correlationBlock = idGenerator.nextId();
+        this.chainBlock = idGenerator.nextId();
+    }
+
+    String nextId() {
+        return idGenerator.nextId();
+    }
+
+    /**
+     * Run the handler of a received event, recording it as a hop of its chain if the profiler is enabled.
+     */
+    <T> void handle(Delivery delivery, Event event, T argument, BiConsumer<Event, T> handler) {
+        ChainProfiler current = profiler;
+        if(current == null) {
+            handler.accept(event, argument);
+            return;
+        }
+
+        long receivedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            handler.accept(event, argument);
+        } finally {
+            current.record(event, delivery.getPublishedAt(), receivedAt, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Listener options with the service wide defaults applied.
+     */
+    ListenerOptions listenerOptions(ListenerOptions options) {
+        return options.withDefaultExecutor(executor);
+    }
+
+    /**
+     * Routing key for an event, cached for events in the correlation blocks of the current service.
+     */
+    String routingKey(String correlationBlock, String eventName) {
+        if(this.correlationBlock.equals(correlationBlock)) {
+            return routingKey(routingKeys, correlationBlock, eventName);
+        }
+        if(chainBlock.equals(correlationBlock)) {
+            return routingKey(chainRoutingKeys, correlationBlock, eventName);
+        }
+        return correlationBlock + "." + eventName;
+    }
+
+    private static String routingKey(ConcurrentMap<String, String> cache, String correlationBlock, String eventName) {
+        String routingKey = cache.get(eventName);
+        if(routingKey == null) {
+            routingKey = correlationBlock + "." + eventName;
+            cache.putIfAbsent(eventName, routingKey);
+        }
+        return routingKey;
     }
 }
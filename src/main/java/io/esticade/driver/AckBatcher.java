@@ -0,0 +1,100 @@
+package io.esticade.driver;
+
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acknowledges the deliveries of a single consumer channel in batches.
+ *
+ * <p>Handlers running on an executor may finish out of order, so a multiple acknowledgement only ever covers the
+ * deliveries up to the first one still being handled. The batch is flushed once it is full or once the interval since
+ * the first delivery of the batch has passed.</p>
+ */
+class AckBatcher {
+    private final Channel channel;
+    private final int batchSize;
+    private final long intervalMSec;
+    private final HashedWheelTimer timer;
+    private final Metrics metrics;
+
+    // Delivery tags of a channel start from 1 and increase by one for every delivery.
+    private long acked = 0;
+    private long handled = 0;
+    private final TreeSet<Long> handledOutOfOrder = new TreeSet<>();
+    private int unacked = 0;
+    private HashedWheelTimer.Timeout scheduledFlush;
+
+    AckBatcher(Channel channel, int batchSize, long intervalMSec, HashedWheelTimer timer, Metrics metrics) {
+        this.metrics = metrics;
+        this.channel = channel;
+        this.batchSize = Math.max(1, batchSize);
+        this.intervalMSec = intervalMSec;
+        this.timer = timer;
+    }
+
+    synchronized void ack(long deliveryTag) throws IOException {
+        if(batchSize == 1) {
+            if(channel.isOpen()) {
+                channel.basicAck(deliveryTag, false);
+            }
+            return;
+        }
+
+        if(deliveryTag == handled + 1) {
+            handled = deliveryTag;
+            while(!handledOutOfOrder.isEmpty() && handledOutOfOrder.first() == handled + 1) {
+                handled = handledOutOfOrder.pollFirst();
+            }
+        } else {
+            handledOutOfOrder.add(deliveryTag);
+        }
+        unacked++;
+
+        if(unacked >= batchSize) {
+            flush();
+        } else if(scheduledFlush == null) {
+            scheduledFlush = timer.schedule(this::flushQuietly, intervalMSec, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void ackQuietly(long deliveryTag) {
+        try {
+            ack(deliveryTag);
+        } catch (IOException e) {
+            metrics.ackFailed();
+            e.printStackTrace();
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        if(scheduledFlush != null) {
+            scheduledFlush.cancel();
+            scheduledFlush = null;
+        }
+
+        if(handled > acked) {
+            boolean multiple = handled - acked > 1;
+            acked = handled;
+            unacked = handledOutOfOrder.size();
+            if(channel.isOpen()) {
+                channel.basicAck(handled, multiple);
+            }
+        }
+
+        if(unacked > 0 && !timer.isStopped()) {
+            scheduledFlush = timer.schedule(this::flushQuietly, intervalMSec, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            metrics.ackFailed();
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package io.esticade.driver;
 
+import java.util.concurrent.TimeUnit;
+
 public class AsyncShutdown extends Thread {
     private Connector connector;
 
@@ -9,11 +11,9 @@ public class AsyncShutdown extends Thread {
 
     @Override
     public void run() {
-        while(connector.isPending()){
-            try {
-                sleep(100);
-            } catch (InterruptedException ignored) {
-            }
+        try {
+            connector.awaitIdle(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ignored) {
         }
         connector.shutdown();
     }
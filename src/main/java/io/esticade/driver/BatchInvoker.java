@@ -0,0 +1,173 @@
+package io.esticade.driver;
+
+import io.esticade.ListenerOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the events of a listener into batches and runs the callback once per batch.
+ *
+ * <p>A batch is handed to the callback once it has the maximum number of events or once the maximum wait has passed
+ * since its first event arrived. Batches are handled one at a time in arrival order, on the executor selected in the
+ * listener options or on a thread of the listener's own which is let go while idle, never on the thread delivering the
+ * events. Once the callback returns all the events of the batch are done and the batch is acknowledged at once.</p>
+ */
+class BatchInvoker extends HandlerInvoker {
+    private static final String BATCH_KEY = "";
+    private static final long IDLE_THREAD_SEC = 60;
+
+    private final Consumer<List<Delivery>> callback;
+    private final int maxSize;
+    private final long maxWaitMSec;
+    private final HashedWheelTimer timer;
+    private final Runnable batchDone;
+    private final OrderedExecutor batches;
+
+    private List<Batched> pending;
+    private HashedWheelTimer.Timeout scheduledFlush;
+
+    /**
+     * @param maxSize Maximum number of events in a batch
+     * @param maxWaitMSec Maximum time in milliseconds the first event of a batch waits for the batch to fill
+     * @param batchDone Called after the events of a handled batch are done, to acknowledge them at once.
+     */
+    BatchInvoker(Consumer<List<Delivery>> callback, ListenerOptions options, int maxSize, long maxWaitMSec,
+                 HashedWheelTimer timer, Runnable batchDone, Metrics metrics) {
+        super(null, options, metrics);
+        this.callback = callback;
+        this.maxSize = Math.max(1, maxSize);
+        this.maxWaitMSec = maxWaitMSec;
+        this.timer = timer;
+        this.batchDone = batchDone;
+        this.batches = new OrderedExecutor(options.getExecutor() != null ? options.getExecutor() : ownThread(), this::reject);
+        this.pending = new ArrayList<>(this.maxSize);
+    }
+
+    @Override
+    void invoke(Delivery delivery, Runnable done) {
+        Metrics.EventMetrics eventMetrics = received(delivery, done);
+        if(eventMetrics == null) {
+            return;
+        }
+
+        List<Batched> full = null;
+        synchronized (this) {
+            pending.add(new Batched(delivery, done, eventMetrics));
+            if(pending.size() >= maxSize) {
+                full = take();
+            } else if(scheduledFlush == null) {
+                scheduledFlush = timer.schedule(this::flush, maxWaitMSec, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if(full != null) {
+            execute(full);
+        }
+    }
+
+    @Override
+    int getBatchSize() {
+        return maxSize;
+    }
+
+    /**
+     * Hand the events collected so far to the callback, even if the batch is not full.
+     */
+    void flush() {
+        List<Batched> batch;
+        synchronized (this) {
+            if(pending.isEmpty()) {
+                return;
+            }
+            batch = take();
+        }
+        execute(batch);
+    }
+
+    private List<Batched> take() {
+        if(scheduledFlush != null) {
+            scheduledFlush.cancel();
+            scheduledFlush = null;
+        }
+
+        List<Batched> batch = pending;
+        pending = new ArrayList<>(maxSize);
+        return batch;
+    }
+
+    private void execute(List<Batched> batch) {
+        batches.execute(BATCH_KEY, new Batch(batch));
+    }
+
+    /**
+     * The executor rejected the batch, its events are done without running the callback.
+     */
+    private void reject(Runnable task) {
+        List<Batched> batch = ((Batch) task).events;
+        for (Batched batched : batch) {
+            batched.eventMetrics.rejected();
+            batched.done.run();
+        }
+        batchDone.run();
+    }
+
+    private void handle(List<Batched> batch) {
+        List<Delivery> deliveries = new ArrayList<>(batch.size());
+        for (Batched batched : batch) {
+            deliveries.add(batched.delivery);
+        }
+
+        long start = System.nanoTime();
+        try {
+            callback.accept(deliveries);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            // The handling time of the batch is shared evenly by its events.
+            long nanos = (System.nanoTime() - start) / batch.size();
+            for (Batched batched : batch) {
+                batched.eventMetrics.handled(nanos);
+                batched.done.run();
+            }
+            batchDone.run();
+        }
+    }
+
+    private static ThreadPoolExecutor ownThread() {
+        return new ThreadPoolExecutor(0, 1, IDLE_THREAD_SEC, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "esticade-batch-handler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private class Batch implements Runnable {
+        final List<Batched> events;
+
+        Batch(List<Batched> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void run() {
+            handle(events);
+        }
+    }
+
+    private static class Batched {
+        final Delivery delivery;
+        final Runnable done;
+        final Metrics.EventMetrics eventMetrics;
+
+        Batched(Delivery delivery, Runnable done, Metrics.EventMetrics eventMetrics) {
+            this.delivery = delivery;
+            this.done = done;
+            this.eventMetrics = eventMetrics;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.esticade.driver;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of large message bodies, signalled with the content encoding property of the message.
+ *
+ * <p>Bodies are decompressed into a buffer recycled per thread and decoded straight from there, so receiving a
+ * compressed event allocates no more than receiving a plain one. Buffers grown for exceptionally large bodies are not
+ * kept.</p>
+ *
+ * <p>The decompressed size is capped, so a corrupt or hostile message can not make the receiver allocate more than the
+ * cap.</p>
+ */
+abstract class Compression {
+    /**
+     * LZ4 block prefixed with the length of the uncompressed body as a big-endian int. Cheap enough to use on any
+     * body worth compressing, only understood by this library.
+     */
+    static final Compression LZ4 = new Lz4();
+
+    /**
+     * Zlib stream as in HTTP, smaller than LZ4 at a higher cost and understood by any client.
+     */
+    static final Compression DEFLATE = new Deflate();
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int MAX_RECYCLED_BUFFER = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER]);
+
+    /**
+     * Receives the decompressed body, which is only valid until the decoder returns.
+     */
+    interface Decoder<T> {
+        T decode(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * @param name Name from the configuration, none for no compression.
+     * @return Compression, null for none
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    static Compression forName(String name) {
+        switch(name.toLowerCase()) {
+            case "none": return null;
+            case "lz4": return LZ4;
+            case "deflate": return DEFLATE;
+            default:
+                throw new IllegalArgumentException("Unknown compression: " + name);
+        }
+    }
+
+    /**
+     * @param contentEncoding Content encoding of the received message
+     * @return Compression, null if the body is not compressed
+     * @throws IOException If the encoding is unknown
+     */
+    static Compression forContentEncoding(String contentEncoding) throws IOException {
+        if(contentEncoding == null || contentEncoding.isEmpty() || contentEncoding.equalsIgnoreCase("identity")) {
+            return null;
+        }
+        if(contentEncoding.equalsIgnoreCase(LZ4.getContentEncoding())) {
+            return LZ4;
+        }
+        if(contentEncoding.equalsIgnoreCase(DEFLATE.getContentEncoding())) {
+            return DEFLATE;
+        }
+        throw new IOException("Unknown content encoding: " + contentEncoding);
+    }
+
+    /**
+     * @return Value of the content encoding property of the compressed messages.
+     */
+    abstract String getContentEncoding();
+
+    abstract byte[] compress(byte[] body);
+
+    /**
+     * Decompress the body into the buffer of the current thread and decode it from there.
+     * @param maxLength Size in bytes the body may decompress to at most
+     * @throws IOException If the body is corrupt or decompresses to more than the maximum length
+     */
+    abstract <T> T decompress(byte[] body, int maxLength, Decoder<T> decoder) throws IOException;
+
+    /**
+     * Buffer of the current thread, with room for at least the given number of bytes.
+     */
+    static byte[] buffer(int length) {
+        byte[] buffer = buffers.get();
+        if(buffer.length >= length) {
+            return buffer;
+        }
+
+        buffer = new byte[Math.max(length, buffer.length * 2)];
+        if(buffer.length <= MAX_RECYCLED_BUFFER) {
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static IOException tooLarge(int length, int maxLength) {
+        return new IOException("Body decompresses to more than " + maxLength + " bytes, at least " + length);
+    }
+
+    private static class Lz4 extends Compression {
+        private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+
+        @Override
+        String getContentEncoding() {
+            return "lz4";
+        }
+
+        @Override
+        byte[] compress(byte[] body) {
+            byte[] compressed = new byte[4 + compressor.maxCompressedLength(body.length)];
+            compressed[0] = (byte) (body.length >>> 24);
+            compressed[1] = (byte) (body.length >>> 16);
+            compressed[2] = (byte) (body.length >>> 8);
+            compressed[3] = (byte) body.length;
+            int length = compressor.compress(body, 0, body.length, compressed, 4, compressed.length - 4);
+            return Arrays.copyOf(compressed, 4 + length);
+        }
+
+        @Override
+        <T> T decompress(byte[] body, int maxLength, Decoder<T> decoder) throws IOException {
+            if(body.length < 4) {
+                throw new IOException("Truncated LZ4 body");
+            }
+            int length = (body[0] & 0xff) << 24 | (body[1] & 0xff) << 16 | (body[2] & 0xff) << 8 | (body[3] & 0xff);
+            if(length < 0) {
+                throw new IOException("Invalid LZ4 body length " + length);
+            }
+            if(length > maxLength) {
+                throw tooLarge(length, maxLength);
+            }
+
+            byte[] buffer = buffer(length);
+            int decompressed;
+            try {
+                decompressed = decompressor.decompress(body, 4, body.length - 4, buffer, 0, length);
+            } catch (LZ4Exception e) {
+                throw new IOException("Corrupt LZ4 body", e);
+            }
+            if(decompressed != length) {
+                throw new IOException("Corrupt LZ4 body, decompressed to " + decompressed + " bytes instead of " + length);
+            }
+            return decoder.decode(buffer, 0, length);
+        }
+    }
+
+    private static class Deflate extends Compression {
+        private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+        private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+        @Override
+        String getContentEncoding() {
+            return "deflate";
+        }
+
+        @Override
+        byte[] compress(byte[] body) {
+            Deflater deflater = deflaters.get();
+            deflater.reset();
+            deflater.setInput(body);
+            deflater.finish();
+
+            byte[] buffer = buffer(body.length + 64);
+            int length = 0;
+            while(!deflater.finished()) {
+                if(length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        @Override
+        <T> T decompress(byte[] body, int maxLength, Decoder<T> decoder) throws IOException {
+            Inflater inflater = inflaters.get();
+            inflater.reset();
+            inflater.setInput(body);
+
+            // One byte over the maximum is enough to tell the body is too large.
+            long limit = Math.min(maxLength + 1L, Integer.MAX_VALUE - 8);
+            byte[] buffer = buffer((int) Math.min(body.length * 4L, limit));
+            int length = 0;
+            try {
+                while(!inflater.finished()) {
+                    if(length > maxLength) {
+                        throw tooLarge(length, maxLength);
+                    }
+                    if(length == buffer.length) {
+                        byte[] grown = buffer((int) Math.min(buffer.length * 2L, limit));
+                        System.arraycopy(buffer, 0, grown, 0, length);
+                        buffer = grown;
+                    }
+                    int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                    if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflate body");
+                    }
+                    length += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt deflate body", e);
+            }
+            if(length > maxLength) {
+                throw tooLarge(length, maxLength);
+            }
+            return decoder.decode(buffer, 0, length);
+        }
+    }
+}
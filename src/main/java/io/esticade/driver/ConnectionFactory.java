@@ -1,5 +1,7 @@
 package io.esticade.driver;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 public class ConnectionFactory {
     private static Connector connector;
@@ -8,7 +10,11 @@ public class ConnectionFactory {
         
         if(connector == null){
             try {
-                connector = new RabbitMQ(config.getAmqpUrl(), config.getExchange(), config.isEngraved());
+                if(config.getAmqpUrl().startsWith(InMemory.URL_SCHEME)) {
+                    connector = new InMemory(config);
+                } else {
+                    connector = new RabbitMQ(config);
+                }
             } catch (Exception e) {
                 throw new IOException(e);
             }
@@ -17,7 +23,23 @@ public class ConnectionFactory {
     }
 
     public static void shutdown() {
-        new AsyncShutdown(connector).start();
+        if(connector != null) {
+            new AsyncShutdown(connector).start();
+        }
+        connector = null;
+    }
+
+    /**
+     * Shut the connection down gracefully, waiting at most the given time for the work in flight to drain.
+     * @return False if the timeout passed before the work drained.
+     */
+    public static boolean shutdown(Duration timeout) throws InterruptedException {
+        Connector closing = connector;
         connector = null;
+
+        if(closing == null) {
+            return true;
+        }
+        return closing.shutdown(timeout.toNanos(), TimeUnit.NANOSECONDS);
     }
 }
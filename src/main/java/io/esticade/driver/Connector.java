@@ -1,35 +1,293 @@
 package io.esticade.driver;
-import com.fasterxml.jackson.databind.JsonNode;
 import io.esticade.Event;
+import io.esticade.ListenerOptions;
 
 import java.util.ArrayList;
-import java.util.Timer;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
 public abstract class Connector {
-    private ArrayList<Timer> timers = new ArrayList<>();
+    private final HashedWheelTimer timer = new HashedWheelTimer("esticade-timer", 10, TimeUnit.MILLISECONDS, 512);
+
+    /**
+     * Handlers running and publishes not yet confirmed by the transport.
+     */
+    final InFlight inFlight = new InFlight();
+
+    final Metrics metrics = new Metrics();
+
+    /**
+     * Sent with every event published by this connector together with the sequence number of the emit, so the
+     * listeners getting the events locally can skip the copy coming back from the broker.
+     */
+    final String origin = UUID.randomUUID().toString();
+    static final String ORIGIN_HEADER = "x-esticade-origin";
+    private final AtomicLong localSequence = new AtomicLong();
+    private final ReadWriteLock localLock = new ReentrantReadWriteLock();
+
+    private final Compression compression;
+    private final int compressionThreshold;
+
+    /**
+     * Size in bytes a received body may decompress to at most, larger ones are rejected as corrupt.
+     */
+    final int maxDecompressedSize;
+
+    private final boolean localDelivery;
+    private final List<LocalListener> localListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService localDispatcher;
+
+    protected Connector(Configuration config) {
+        compression = Compression.forName(config.getCompression());
+        compressionThreshold = config.getCompressionThreshold();
+        maxDecompressedSize = config.getMaxDecompressedSize();
+        localDelivery = config.isLocalDelivery();
+        localDispatcher = localDelivery
+            ? Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "esticade-local-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            })
+            : null;
+
+        metrics.registerMBean();
+    }
 
     public abstract void emit(Event event);
-    public abstract String registerListener(String routingKey, String queueName, Consumer<JsonNode> callback);
+
+    /**
+     * Emit the event and return future which completes once the transport has accepted the event.
+     */
+    public abstract CompletableFuture<Event> emitAsync(Event event);
+
+    public abstract String registerListener(String routingKey, String queueName, ListenerOptions options, Consumer<Delivery> callback);
+
+    /**
+     * Register a listener receiving the events in batches of up to the given size.
+     *
+     * <p>A batch is handed to the callback once it is full or once the maximum wait has passed since its first event
+     * arrived. All the events of a batch are acknowledged at once after the callback returns.</p>
+     *
+     * @param maxSize Maximum number of events in a batch
+     * @param maxWaitMSec Maximum time in milliseconds an event waits for its batch to fill
+     */
+    public abstract String registerBatchListener(String routingKey, String queueName, ListenerOptions options, int maxSize, long maxWaitMSec, Consumer<List<Delivery>> callback);
 
     protected abstract void terminate();
 
+    /**
+     * Stop receiving new events for all the listeners, while still allowing the events already received to be
+     * acknowledged.
+     */
+    protected abstract void stopConsuming();
+
     public abstract void deleteListener(String tag);
 
-    public abstract boolean isPending();
+    public boolean isPending() {
+        return !inFlight.isIdle();
+    }
+
+    /**
+     * Wait until no handlers are running and all the publishes are confirmed.
+     * @return False if the timeout passed before that.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        return inFlight.awaitIdle(timeout, unit);
+    }
 
     public void shutdown(){
-        timers.forEach(Timer::cancel);
+        if(localDispatcher != null) {
+            localDispatcher.shutdown();
+        }
         terminate();
+        timer.stop();
+        metrics.unregisterMBean();
+    }
+
+    /**
+     * Stop consuming, wait for the work in flight to drain and close the connection.
+     * @return False if the timeout passed before the work drained, the connection is closed regardless.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        localListeners.clear();
+        stopConsuming();
+        try {
+            return awaitIdle(timeout, unit);
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Deliver the events emitted in this process to the listener without the broker, if local delivery is enabled.
+     *
+     * <p>Only non-shared listeners qualify. Shared listeners divide the events with the other instances of the
+     * service, which only the broker can do.</p>
+     */
+    boolean isLocalDelivery() {
+        return localDelivery;
+    }
+
+    /**
+     * Start delivering the events emitted from now on to the listener locally. The broker copies of the events
+     * emitted before are still delivered.
+     */
+    void registerLocal(Listener listener) {
+        if(localDelivery && listener.getQueueName() == null) {
+            LocalListener local = new LocalListener(TopicPattern.compile(listener.getRoutingKey()), listener);
+            localLock.writeLock().lock();
+            try {
+                localListeners.add(local);
+                listener.setLocalFrom(localSequence.get() + 1);
+            } finally {
+                localLock.writeLock().unlock();
+            }
+        }
     }
 
-    public Timer getTimer() {
-        Timer timer = new Timer();
-        timers.add(timer);
+    void deleteLocal(Listener listener) {
+        localListeners.removeIf(local -> local.listener == listener);
+    }
+
+    /**
+     * @param stamp Value of the origin header of the event received from the broker
+     * @return True if the event was already delivered to the listener locally.
+     */
+    boolean isLocalCopy(Listener listener, Object stamp) {
+        if(!listener.isLocal() || stamp == null) {
+            return false;
+        }
+
+        String value = stamp.toString();
+        int separator = value.lastIndexOf(':');
+        if(separator != origin.length() || !value.startsWith(origin)) {
+            return false;
+        }
+        try {
+            return Long.parseLong(value.substring(separator + 1)) >= listener.getLocalFrom();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Number the emitted event and pick the local listeners it goes to, under the same lock as the local
+     * registrations. So a listener gets exactly one copy of every event, the local one if it was registered before the
+     * event was numbered and the broker one otherwise.
+     *
+     * @return Local copy of the event to publish the stamp of and to deliver, null if local delivery is disabled.
+     */
+    LocalEmit prepareLocal(String routingKey) {
+        if(!localDelivery) {
+            return null;
+        }
+
+        localLock.readLock().lock();
+        try {
+            List<Listener> listeners = Collections.emptyList();
+            for (LocalListener local : localListeners) {
+                if(local.pattern.matches(routingKey)) {
+                    if(listeners.isEmpty()) {
+                        listeners = new ArrayList<>(2);
+                    }
+                    listeners.add(local.listener);
+                }
+            }
+            return new LocalEmit(origin + ":" + localSequence.incrementAndGet(), listeners);
+        } finally {
+            localLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hand the emitted event to the local listeners picked for it, on a dispatcher thread of its own so the emitting
+     * thread never runs the handlers.
+     */
+    void deliverLocally(LocalEmit local, Event event, long publishedAt) {
+        if(local == null || local.listeners.isEmpty()) {
+            return;
+        }
+
+        String routingKey = event.routingKey();
+        for (Listener listener : local.listeners) {
+            Delivery delivery = new Delivery(event, routingKey, publishedAt);
+            inFlight.enter();
+            try {
+                localDispatcher.execute(() -> listener.getInvoker().invoke(delivery, inFlight::exit));
+            } catch (RejectedExecutionException e) {
+                // Connector is shut down, the event is not delivered anywhere else either.
+                inFlight.exit();
+            }
+        }
+    }
+
+    /**
+     * Compress the encoded event if it is larger than the threshold.
+     * @return Compressed body, null if the body is to be sent as it is.
+     */
+    byte[] compress(byte[] body) {
+        if(compression == null || body.length < compressionThreshold) {
+            return null;
+        }
+        byte[] compressed = compression.compress(body);
+        return compressed.length < body.length ? compressed : null;
+    }
+
+    /**
+     * @return Content encoding of the bodies returned by {@link #compress(byte[])}.
+     */
+    String getContentEncoding() {
+        return compression != null ? compression.getContentEncoding() : null;
+    }
+
+    /**
+     * Timer shared by everything using this connector, stopped on shutdown.
+     */
+    public HashedWheelTimer getTimer() {
         return timer;
     }
 
-    public void clearTimer(Timer timer){
-        timers.remove(timer);
+    /**
+     * Counters and timings of the events going through this connector.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Emitted event as seen by the local listeners.
+     */
+    static class LocalEmit {
+        /**
+         * Value of the origin header, the origin of the connector and the sequence number of the emit.
+         */
+        final String stamp;
+        final List<Listener> listeners;
+
+        LocalEmit(String stamp, List<Listener> listeners) {
+            this.stamp = stamp;
+            this.listeners = listeners;
+        }
+    }
+
+    private static class LocalListener {
+        final TopicPattern pattern;
+        final Listener listener;
+
+        LocalListener(TopicPattern pattern, Listener listener) {
+            this.pattern = pattern;
+            this.listener = listener;
+        }
     }
 }
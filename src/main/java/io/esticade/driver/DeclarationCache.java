@@ -0,0 +1,48 @@
+package io.esticade.driver;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Queues and bindings the broker has confirmed on the current connection.
+ *
+ * <p>Declares are idempotent, so anything in the cache does not need to be declared again. The cache only covers a
+ * single connection, after a reconnect the broker may well be a different node which has never seen the topology.</p>
+ */
+class DeclarationCache {
+    private final Set<String> queues = ConcurrentHashMap.newKeySet();
+    private final Set<String> bindings = ConcurrentHashMap.newKeySet();
+
+    boolean hasQueue(String queue) {
+        return queues.contains(queue);
+    }
+
+    void queueDeclared(String queue) {
+        queues.add(queue);
+    }
+
+    boolean hasBinding(String queue, String routingKey) {
+        return bindings.contains(bindingKey(queue, routingKey));
+    }
+
+    void bindingDeclared(String queue, String routingKey) {
+        bindings.add(bindingKey(queue, routingKey));
+    }
+
+    /**
+     * Forget the queue and its bindings, once the broker may have deleted it.
+     */
+    void queueDeleted(String queue) {
+        queues.remove(queue);
+        bindings.removeIf(binding -> binding.startsWith(queue + '\n'));
+    }
+
+    void clear() {
+        queues.clear();
+        bindings.clear();
+    }
+
+    private static String bindingKey(String queue, String routingKey) {
+        return queue + '\n' + routingKey;
+    }
+}
@@ -0,0 +1,192 @@
+package io.esticade.driver;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Event IDs recently seen by a listener, for dropping the events delivered more than once.
+ *
+ * <p>IDs are kept as 64-bit fingerprints in two generations of open addressing tables of primitive longs. A generation
+ * is retired once half the window has passed or once it is full, its fingerprints then move on into a Bloom filter
+ * which remembers them for two more generations. Memory is fixed by the capacity no matter the event rate, a higher
+ * rate only shortens the time the IDs are remembered for.</p>
+ *
+ * <p>An ID found in the tables is always a duplicate. An ID only found in the Bloom filter may be a false positive,
+ * so it only counts as a duplicate if the broker flagged the delivery as redelivered, which is where the duplicates
+ * long after the original delivery come from.</p>
+ */
+class DeduplicationIndex {
+    private static final int BLOOM_BITS_PER_ID = 16;
+    private static final int BLOOM_HASHES = 11;
+
+    private final long generationNanos;
+    private final int capacity;
+
+    private FingerprintTable current;
+    private FingerprintTable previous;
+    private BloomFilter recentTail;
+    private BloomFilter oldTail;
+    private long generationStart;
+
+    /**
+     * @param windowMSec Time the IDs are remembered exactly for, as long as the capacity is not reached
+     * @param capacity Number of IDs per generation
+     */
+    DeduplicationIndex(long windowMSec, int capacity) {
+        this.generationNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMSec) / 2);
+        this.capacity = Math.max(1, capacity);
+
+        this.current = new FingerprintTable(this.capacity);
+        this.previous = new FingerprintTable(this.capacity);
+        this.recentTail = new BloomFilter(this.capacity);
+        this.oldTail = new BloomFilter(this.capacity);
+        this.generationStart = System.nanoTime();
+    }
+
+    /**
+     * Remember the event ID.
+     * @param redelivered Whether the broker has delivered the event before
+     * @return True if the event was seen before and should be dropped.
+     */
+    boolean isDuplicate(String eventId, boolean redelivered) {
+        return isDuplicate(fingerprint(eventId), redelivered, System.nanoTime());
+    }
+
+    synchronized boolean isDuplicate(long fingerprint, boolean redelivered, long now) {
+        if(now - generationStart >= generationNanos) {
+            rotate(now);
+        }
+
+        if(current.contains(fingerprint) || previous.contains(fingerprint)) {
+            return true;
+        }
+        if(redelivered && (recentTail.mightContain(fingerprint) || oldTail.mightContain(fingerprint))) {
+            return true;
+        }
+
+        if(current.size() >= capacity) {
+            rotate(now);
+        }
+        current.add(fingerprint);
+        return false;
+    }
+
+    /**
+     * Retire the oldest table into the Bloom filter and start a new generation, reusing the arrays of the retired
+     * ones.
+     */
+    private void rotate(long now) {
+        BloomFilter retiredTail = oldTail;
+        oldTail = recentTail;
+        recentTail = retiredTail;
+        recentTail.clear();
+        previous.forEach(recentTail::add);
+
+        FingerprintTable retired = previous;
+        previous = current;
+        current = retired;
+        current.clear();
+
+        generationStart = now;
+    }
+
+    /**
+     * Hash of the ID, see {@link Hashing#hash64(String)}. Never zero, as zero marks the empty slots.
+     */
+    static long fingerprint(String eventId) {
+        long hash = Hashing.hash64(eventId);
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Open addressing set of fingerprints with linear probing, at most half full.
+     */
+    private static class FingerprintTable {
+        private final long[] slots;
+        private final int mask;
+        private int size;
+
+        FingerprintTable(int capacity) {
+            int length = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.slots = new long[length];
+            this.mask = length - 1;
+        }
+
+        boolean contains(long fingerprint) {
+            for (int slot = (int) fingerprint & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                if(slots[slot] == fingerprint) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long fingerprint) {
+            int slot = (int) fingerprint & mask;
+            while(slots[slot] != 0) {
+                if(slots[slot] == fingerprint) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = fingerprint;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(LongConsumer action) {
+            for (long fingerprint : slots) {
+                if(fingerprint != 0) {
+                    action.accept(fingerprint);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * Bloom filter over the fingerprints, the bit indexes are derived from the two halves of the fingerprint.
+     */
+    private static class BloomFilter {
+        private final long[] bits;
+        private final long bitCount;
+
+        BloomFilter(int capacity) {
+            this.bits = new long[Math.max(1, (capacity * BLOOM_BITS_PER_ID + 63) / 64)];
+            this.bitCount = bits.length * 64L;
+        }
+
+        void add(long fingerprint) {
+            int h1 = (int) fingerprint;
+            int h2 = (int) (fingerprint >>> 32);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long fingerprint) {
+            int h1 = (int) fingerprint;
+            int h2 = (int) (fingerprint >>> 32);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void clear() {
+            Arrays.fill(bits, 0);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package io.esticade.driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.esticade.Event;
+
+import java.io.IOException;
+
+/**
+ * Message body received by a listener, together with the codec it was encoded with.
+ *
+ * <p>Nothing is decoded until the handler asks for it, so the body can be bound straight into the type the handler
+ * expects instead of going through a tree of nodes first.</p>
+ *
+ * <p>Events delivered locally carry the emitted event object instead of a body, see
+ * {@link Connector#deliverLocally(Connector.LocalEmit, Event, long)}.</p>
+ */
+public final class Delivery {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Event event;
+    private final byte[] body;
+    private final EventCodec codec;
+    private final String contentEncoding;
+    private final int maxDecompressedSize;
+    private final String routingKey;
+    private final long publishedAt;
+    private final boolean redelivered;
+
+    // Envelope without the body, decoded once for the listener options that need it before the handler runs.
+    private EventEnvelope header;
+
+    Delivery(byte[] body, EventCodec codec, String contentEncoding, int maxDecompressedSize, String routingKey, long publishedAt) {
+        this(body, codec, contentEncoding, maxDecompressedSize, routingKey, publishedAt, false);
+    }
+
+    /**
+     * @param maxDecompressedSize Size in bytes a compressed body may decompress to at most
+     */
+    Delivery(byte[] body, EventCodec codec, String contentEncoding, int maxDecompressedSize, String routingKey, long publishedAt, boolean redelivered) {
+        this.event = null;
+        this.body = body;
+        this.codec = codec;
+        this.contentEncoding = contentEncoding;
+        this.maxDecompressedSize = maxDecompressedSize;
+        this.routingKey = routingKey;
+        this.publishedAt = publishedAt;
+        this.redelivered = redelivered;
+    }
+
+    Delivery(Event event, String routingKey, long publishedAt) {
+        this.event = event;
+        this.body = null;
+        this.codec = null;
+        this.contentEncoding = null;
+        this.maxDecompressedSize = 0;
+        this.routingKey = routingKey;
+        this.publishedAt = publishedAt;
+        this.redelivered = false;
+    }
+
+    /**
+     * @return Message body as received, compressed if {@link #getContentEncoding()} says so. Null for events
+     * delivered locally.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public EventCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return Compression of the body, null if not compressed.
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * @return Time the event was published in milliseconds since the epoch, 0 if unknown.
+     */
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    /**
+     * @return True if the broker has delivered the event before.
+     */
+    public boolean isRedelivered() {
+        return redelivered;
+    }
+
+    /**
+     * Decode the event.
+     * @param bodyReader Reader binding the body of the event, null to skip the body.
+     * @return Decoded event
+     * @throws IOException When the body can not be decoded
+     */
+    public EventEnvelope envelope(ObjectReader bodyReader) throws IOException {
+        return envelope(bodyReader, null);
+    }
+
+    /**
+     * Decode the event, handing the body of a local event straight over if it already is of the given type.
+     * @param bodyReader Reader binding the body of the event, null to skip the body.
+     * @param bodyType Type the reader binds the body into, null if not known.
+     * @return Decoded event
+     * @throws IOException When the body can not be decoded
+     */
+    public EventEnvelope envelope(ObjectReader bodyReader, Class<?> bodyType) throws IOException {
+        if(event != null) {
+            return localEnvelope(bodyReader, bodyType);
+        }
+
+        Compression compression = Compression.forContentEncoding(contentEncoding);
+        if(compression != null) {
+            return compression.decompress(body, maxDecompressedSize, (buffer, offset, length) -> codec.decode(buffer, offset, length, bodyReader));
+        }
+        return codec.decode(body, bodyReader);
+    }
+
+    /**
+     * Bind the body of the local event without encoding it. A body already of the expected type is handed over as is,
+     * so the handler shares it with the emitter and must not modify it. Any other body goes through a tree the same
+     * shape the encoded body would have.
+     */
+    private EventEnvelope localEnvelope(ObjectReader bodyReader, Class<?> bodyType) throws IOException {
+        Object value = null;
+        if(bodyReader != null && event.body != null) {
+            if(bodyType != null && bodyType != Object.class && bodyType.isInstance(event.body)) {
+                value = event.body;
+            } else {
+                JsonNode tree = event.body instanceof JsonNode ? (JsonNode) event.body : mapper.valueToTree(event.body);
+                value = bodyReader.readValue(tree);
+            }
+        }
+        return new EventEnvelope(event.eventId, event.name, event.correlationId, event.correlationBlock, event.parentId, event.service, value);
+    }
+
+    /**
+     * Correlation ID of the event, read without decoding the body.
+     */
+    String correlationId() throws IOException {
+        return header().correlationId;
+    }
+
+    /**
+     * Event ID of the event, read without decoding the body.
+     */
+    String eventId() throws IOException {
+        return header().eventId;
+    }
+
+    private EventEnvelope header() throws IOException {
+        if(header == null) {
+            header = envelope(null);
+        }
+        return header;
+    }
+}
@@ -0,0 +1,87 @@
+package io.esticade.driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.esticade.Event;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Wire format of the events.
+ *
+ * <p>The codec used for publishing is selected with the <code>codec</code> configuration option. Received events are
+ * decoded with the codec matching the content type of the message, so services using different codecs can talk to
+ * each other as long as both sides know the codec. Custom codecs can be added with
+ * {@link EventCodecs#register(EventCodec)} or by listing them in
+ * <code>META-INF/services/io.esticade.driver.EventCodec</code>.</p>
+ *
+ * <p>Implementations must be thread safe.</p>
+ */
+public interface EventCodec {
+    /**
+     * @return MIME type sent in the content type property of the message.
+     */
+    String getContentType();
+
+    /**
+     * Encode the event into the message body.
+     * @param event Event to encode
+     * @return Message body
+     * @throws IOException When the event can not be encoded
+     */
+    byte[] encode(Event event) throws IOException;
+
+    /**
+     * Decode the message body into an event tree.
+     * @param body Message body
+     * @return Event as a tree of nodes
+     * @throws IOException When the body can not be decoded
+     */
+    JsonNode decode(byte[] body) throws IOException;
+
+    /**
+     * Decode the message body, binding the event body with the given reader.
+     *
+     * <p>The default implementation goes through the tree returned by {@link #decode(byte[])}, codecs which can
+     * stream the body into the reader should override it.</p>
+     *
+     * @param body Message body
+     * @param bodyReader Reader binding the body of the event, null to skip the body.
+     * @return Decoded event
+     * @throws IOException When the body can not be decoded
+     */
+    default EventEnvelope decode(byte[] body, ObjectReader bodyReader) throws IOException {
+        JsonNode tree = decode(body);
+        JsonNode value = tree.get("body");
+
+        return new EventEnvelope(
+            tree.path("eventId").asText(null),
+            tree.path("name").asText(null),
+            tree.path("correlationId").asText(null),
+            tree.path("correlationBlock").asText(null),
+            tree.path("parentId").asText(null),
+            tree.path("service").asText(null),
+            bodyReader == null || value == null || value.isNull() ? null : bodyReader.readValue(value)
+        );
+    }
+
+    /**
+     * Decode the message body from a slice of a buffer, such as the buffer a compressed body was decompressed into.
+     *
+     * <p>The default implementation copies the slice, codecs which can read the slice in place should override it.</p>
+     *
+     * @param buffer Buffer holding the message body
+     * @param offset Start of the body in the buffer
+     * @param length Length of the body
+     * @param bodyReader Reader binding the body of the event, null to skip the body.
+     * @return Decoded event
+     * @throws IOException When the body can not be decoded
+     */
+    default EventEnvelope decode(byte[] buffer, int offset, int length, ObjectReader bodyReader) throws IOException {
+        if(offset == 0 && length == buffer.length) {
+            return decode(buffer, bodyReader);
+        }
+        return decode(Arrays.copyOfRange(buffer, offset, offset + length), bodyReader);
+    }
+}
@@ -0,0 +1,96 @@
+package io.esticade.driver;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the known {@link EventCodec} implementations.
+ */
+public final class EventCodecs {
+    /**
+     * Plain JSON, understood by all Esticade clients.
+     */
+    public static final EventCodec JSON = new JacksonCodec("application/json", new JsonFactory());
+
+    /**
+     * Binary JSON, see <a href="https://github.com/FasterXML/smile-format-specification">Smile format</a>.
+     */
+    public static final EventCodec SMILE = new JacksonCodec("application/x-jackson-smile", new SmileFactory());
+
+    /**
+     * Concise Binary Object Representation, see RFC 7049.
+     */
+    public static final EventCodec CBOR = new JacksonCodec("application/cbor", new CBORFactory());
+
+    private static final ConcurrentMap<String, EventCodec> codecs = new ConcurrentHashMap<>();
+
+    static {
+        register(JSON);
+        register(SMILE);
+        register(CBOR);
+
+        for (EventCodec codec : ServiceLoader.load(EventCodec.class)) {
+            register(codec);
+        }
+    }
+
+    private EventCodecs() {
+    }
+
+    /**
+     * Make the codec available for decoding and for selection from the configuration.
+     * @param codec Codec to register, replaces any codec with the same content type.
+     */
+    public static void register(EventCodec codec) {
+        codecs.put(codec.getContentType(), codec);
+    }
+
+    /**
+     * Find the codec by its short name (json, smile or cbor) or content type.
+     * @param name Name or content type of the codec
+     * @return Codec
+     * @throws IllegalArgumentException If no such codec is registered
+     */
+    public static EventCodec forName(String name) {
+        switch (name.toLowerCase()) {
+            case "json": return JSON;
+            case "smile": return SMILE;
+            case "cbor": return CBOR;
+        }
+
+        EventCodec codec = codecs.get(name);
+        if(codec == null) {
+            throw new IllegalArgumentException("Unknown event codec: " + name);
+        }
+        return codec;
+    }
+
+    /**
+     * Find the codec for decoding a received message.
+     *
+     * <p>Messages without content type and with unknown content type are treated as JSON, as that is what all other
+     * Esticade clients send.</p>
+     *
+     * @param contentType Content type of the message, parameters such as charset are ignored
+     * @return Codec
+     */
+    public static EventCodec forContentType(String contentType) {
+        if(contentType == null) {
+            return JSON;
+        }
+
+        EventCodec codec = codecs.get(contentType);
+        if(codec == null) {
+            int separator = contentType.indexOf(';');
+            if(separator >= 0) {
+                codec = codecs.get(contentType.substring(0, separator).trim());
+            }
+        }
+        return codec != null ? codec : JSON;
+    }
+}
@@ -0,0 +1,24 @@
+package io.esticade.driver;
+
+/**
+ * Fields of a received event, with the body already bound to the type the handler asked for.
+ */
+public final class EventEnvelope {
+    public final String eventId;
+    public final String name;
+    public final String correlationId;
+    public final String correlationBlock;
+    public final String parentId;
+    public final String service;
+    public final Object body;
+
+    public EventEnvelope(String eventId, String name, String correlationId, String correlationBlock, String parentId, String service, Object body) {
+        this.eventId = eventId;
+        this.name = name;
+        this.correlationId = correlationId;
+        this.correlationBlock = correlationBlock;
+        this.parentId = parentId;
+        this.service = service;
+        this.body = body;
+    }
+}
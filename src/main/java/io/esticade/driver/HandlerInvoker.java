@@ -0,0 +1,129 @@
+package io.esticade.driver;
+
+import io.esticade.ListenerOptions;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Runs the callback of a listener on the executor selected in the listener options.
+ *
+ * <p>Without an executor the callback runs on the thread delivering the event. With ordering enabled, events of the
+ * same correlation ID are handled one at a time in arrival order. With deduplication enabled, events already seen are
+ * acknowledged without running the callback. Events the executor rejects are done without running the callback and
+ * counted as rejected.</p>
+ */
+class HandlerInvoker {
+    private final Consumer<Delivery> callback;
+    private final Executor executor;
+    private final OrderedExecutor ordered;
+    private final DeduplicationIndex dedup;
+    private final Metrics metrics;
+
+    HandlerInvoker(Consumer<Delivery> callback, ListenerOptions options, Metrics metrics) {
+        this.callback = callback;
+        this.metrics = metrics;
+        this.executor = options.getExecutor() != null ? options.getExecutor() : Runnable::run;
+        this.ordered = options.isOrderedByCorrelation() ? new OrderedExecutor(executor, task -> ((Handling) task).reject()) : null;
+        this.dedup = options.getDedupWindowMSec() > 0
+            ? new DeduplicationIndex(options.getDedupWindowMSec(), options.getDedupCapacity())
+            : null;
+    }
+
+    /**
+     * Handle the event.
+     * @param delivery Received event
+     * @param done Called once the callback has finished, whether it succeeded or not.
+     */
+    void invoke(Delivery delivery, Runnable done) {
+        Metrics.EventMetrics eventMetrics = received(delivery, done);
+        if(eventMetrics == null) {
+            return;
+        }
+
+        Handling task = new Handling(delivery, done, eventMetrics);
+        if(ordered != null) {
+            ordered.execute(correlationId(delivery), task);
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.reject();
+            }
+        }
+    }
+
+    /**
+     * Number of events handled at once, the connector sizes the prefetch and the acknowledgements by it.
+     */
+    int getBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Count the received event and drop it if it is a duplicate.
+     * @return Metrics of the event, null if it was dropped and is done with.
+     */
+    Metrics.EventMetrics received(Delivery delivery, Runnable done) {
+        Metrics.EventMetrics eventMetrics = metrics.received(delivery);
+
+        if(dedup != null && isDuplicate(delivery)) {
+            eventMetrics.duplicate();
+            done.run();
+            return null;
+        }
+        return eventMetrics;
+    }
+
+    private boolean isDuplicate(Delivery delivery) {
+        try {
+            String eventId = delivery.eventId();
+            return eventId != null && dedup.isDuplicate(eventId, delivery.isRedelivered());
+        } catch (IOException e) {
+            // Undecodable events can not be matched, the callback reports the error.
+            return false;
+        }
+    }
+
+    private class Handling implements Runnable {
+        private final Delivery delivery;
+        private final Runnable done;
+        private final Metrics.EventMetrics eventMetrics;
+
+        Handling(Delivery delivery, Runnable done, Metrics.EventMetrics eventMetrics) {
+            this.delivery = delivery;
+            this.done = done;
+            this.eventMetrics = eventMetrics;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                callback.accept(delivery);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                eventMetrics.handled(System.nanoTime() - start);
+                done.run();
+            }
+        }
+
+        void reject() {
+            eventMetrics.rejected();
+            done.run();
+        }
+    }
+
+    private static String correlationId(Delivery delivery) {
+        try {
+            String correlationId = delivery.correlationId();
+            return correlationId != null ? correlationId : "";
+        } catch (IOException e) {
+            // Undecodable events are not related to anything, the callback reports the error.
+            return "";
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package io.esticade.driver;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timer scheduling any number of timeouts on a single thread.
+ *
+ * <p>Timeouts are kept in a wheel of buckets, each bucket covering one tick. Scheduling and cancelling is O(1) and
+ * lock free, the timer thread moves new timeouts into their buckets and expires one bucket per tick. Timeouts fire
+ * with the precision of a tick, which is plenty for chain timeouts and acknowledgement intervals.</p>
+ *
+ * <p>The tasks run on the timer thread and should return quickly.</p>
+ */
+public final class HashedWheelTimer {
+    private static final int WORKER_INIT = 0;
+    private static final int WORKER_STARTED = 1;
+    private static final int WORKER_STOPPED = 2;
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final Thread worker;
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_INIT);
+
+    private final Queue<WheelTimeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    // Only accessed from the worker thread
+    private long tick = 0;
+
+    /**
+     * @param name Name of the timer thread
+     * @param tickDuration Duration of a single tick
+     * @param unit Unit of the tick duration
+     * @param ticksPerWheel Number of buckets in the wheel, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Run the task once the delay has passed.
+     *
+     * <p>Once the timer is stopped, the returned timeout never fires.</p>
+     *
+     * @param task Task to run on the timer thread
+     * @param delay Delay before the task is run
+     * @param unit Unit of the delay
+     * @return Handle for cancelling the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if(workerState.get() == WORKER_INIT && workerState.compareAndSet(WORKER_INIT, WORKER_STARTED)) {
+            worker.start();
+        }
+
+        WheelTimeout timeout = new WheelTimeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+        if(workerState.get() == WORKER_STOPPED) {
+            timeout.cancel();
+        } else {
+            added.add(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Stop the timer thread, the timeouts not fired yet never will.
+     */
+    public void stop() {
+        if(workerState.getAndSet(WORKER_STOPPED) == WORKER_STARTED) {
+            worker.interrupt();
+        }
+    }
+
+    public boolean isStopped() {
+        return workerState.get() == WORKER_STOPPED;
+    }
+
+    private void run() {
+        while(workerState.get() == WORKER_STARTED) {
+            long now = waitForNextTick();
+            if(now < 0) {
+                break;
+            }
+
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire(now);
+            tick++;
+        }
+    }
+
+    /**
+     * @return Time since start once the next tick is reached, negative when interrupted by stop.
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+
+        while(true) {
+            long now = System.nanoTime() - startTime;
+            long sleepMSec = (deadline - now + 999999) / 1000000;
+
+            if(sleepMSec <= 0) {
+                return now;
+            }
+
+            try {
+                Thread.sleep(sleepMSec);
+            } catch (InterruptedException e) {
+                if(workerState.get() == WORKER_STOPPED) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferAdded() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            WheelTimeout timeout = added.poll();
+            if(timeout == null) {
+                break;
+            }
+            if(timeout.isCancelled()) {
+                continue;
+            }
+
+            long expiresOnTick = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (expiresOnTick - tick) / wheel.length;
+            wheel[(int) (expiresOnTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        WheelTimeout timeout;
+        while((timeout = cancelled.poll()) != null) {
+            if(timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public interface Timeout {
+        /**
+         * Cancel the task unless it has already run.
+         * @return True if the task was cancelled by this call.
+         */
+        boolean cancel();
+    }
+
+    private final class WheelTimeout implements Timeout {
+        private static final int ST_PENDING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+
+        // Only accessed from the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if(!state.compareAndSet(ST_PENDING, ST_CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        void expire() {
+            if(!state.compareAndSet(ST_PENDING, ST_EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts expiring on the same tick of the wheel.
+     */
+    private static final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if(head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long now) {
+            WheelTimeout timeout = head;
+            while(timeout != null) {
+                WheelTimeout next = timeout.next;
+
+                if(timeout.isCancelled()) {
+                    remove(timeout);
+                } else if(timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if(timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            if(timeout.bucket != this) {
+                return;
+            }
+
+            if(timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+
+            if(timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
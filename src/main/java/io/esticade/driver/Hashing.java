@@ -0,0 +1,27 @@
+package io.esticade.driver;
+
+/**
+ * Fast non-cryptographic hash shared by the library, for fingerprinting event IDs and placing keys on a hash ring.
+ */
+public final class Hashing {
+    private Hashing() {
+    }
+
+    /**
+     * 64-bit FNV-1a of the value, finished with the MurmurHash3 mixer so similar values land far apart.
+     */
+    public static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
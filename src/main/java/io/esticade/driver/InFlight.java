@@ -0,0 +1,66 @@
+package io.esticade.driver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the work a connector has in flight: handlers still running and publishes not yet confirmed.
+ *
+ * <p>Waiting for the count to drop to zero parks on a latch which is released by the last piece of work leaving, so
+ * a drain completes as soon as the work does instead of on the next poll.</p>
+ */
+class InFlight {
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile CountDownLatch idle;
+
+    void enter() {
+        count.incrementAndGet();
+    }
+
+    void exit() {
+        if(count.decrementAndGet() == 0) {
+            CountDownLatch latch = idle;
+            if(latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+
+    boolean isIdle() {
+        return count.get() <= 0;
+    }
+
+    /**
+     * Wait until nothing is in flight.
+     * @return False if the timeout passed before that.
+     */
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while(!isIdle()) {
+            CountDownLatch latch = latch();
+            // Work may have left between the check above and the latch being published.
+            if(isIdle()) {
+                break;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0 || !latch.await(remaining, TimeUnit.NANOSECONDS)) {
+                return isIdle();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Latch released the next time the count drops to zero.
+     */
+    private synchronized CountDownLatch latch() {
+        CountDownLatch latch = idle;
+        if(latch == null || latch.getCount() == 0) {
+            latch = idle = new CountDownLatch(1);
+        }
+        return latch;
+    }
+}
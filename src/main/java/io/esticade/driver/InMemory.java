@@ -0,0 +1,291 @@
+package io.esticade.driver;
+
+import io.esticade.Event;
+import io.esticade.ListenerOptions;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Connector that routes events inside the current JVM without any broker.
+ *
+ * <p>Mimics the topology Esticade creates on RabbitMQ: a single topic exchange, named queues which divide events
+ * between their consumers using round-robin and server named exclusive queues for non-shared listeners. All routing
+ * and delivery is done on a single dispatcher thread, the same way the AMQP client delivers events of a channel.
+ * Events are still encoded and decoded, so the cost of the library itself remains measurable.</p>
+ *
+ * <p>Selected by using <code>inmemory://</code> as the connection URL.</p>
+ */
+class InMemory extends Connector {
+    static final String URL_SCHEME = "inmemory:";
+
+    private static final int ROUTE_CACHE_SIZE = 10000;
+
+    private final boolean engraved;
+    private final EventCodec codec;
+    private final ExecutorService dispatcher;
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+
+    // Topology below is only accessed from the dispatcher thread
+    private final Map<String, MemoryQueue> queues = new HashMap<>();
+    private final Map<String, MemoryQueue> consumers = new HashMap<>();
+    private final List<Binding> bindings = new ArrayList<>();
+    private final Map<String, MemoryQueue[]> routes = new HashMap<>();
+    private int queueCounter = 0;
+
+    InMemory(Configuration config) {
+        super(config);
+        this.engraved = config.isEngraved();
+        this.codec = EventCodecs.forName(config.getCodec());
+
+        dispatcher = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "esticade-inmemory-dispatcher"));
+    }
+
+    @Override
+    public void emit(Event event) {
+        try {
+            publish(event, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Event> emitAsync(Event event) {
+        CompletableFuture<Event> routed = new CompletableFuture<>();
+        try {
+            publish(event, routed);
+        } catch (IOException e) {
+            routed.completeExceptionally(e);
+        }
+        return routed;
+    }
+
+    private void publish(Event event, CompletableFuture<Event> routed) throws IOException {
+        String routingKey = event.routingKey();
+        long publishedAt = System.currentTimeMillis();
+        byte[] body = codec.encode(event);
+        byte[] compressed = compress(body);
+        LocalEmit local = prepareLocal(routingKey);
+        String stamp = local != null ? local.stamp : null;
+        Message message = compressed != null
+            ? new Message(compressed, getContentEncoding(), routingKey, publishedAt, stamp)
+            : new Message(body, null, routingKey, publishedAt, stamp);
+        metrics.emitted(event.name);
+
+        inFlight.enter();
+        boolean accepted = enqueue(() -> {
+            try {
+                route(message);
+            } finally {
+                inFlight.exit();
+            }
+            if(routed != null) {
+                routed.complete(event);
+            }
+        });
+
+        if(!accepted) {
+            inFlight.exit();
+            throw new IOException("Connector is terminated");
+        }
+        deliverLocally(local, event, publishedAt);
+    }
+
+    @Override
+    public String registerListener(String routingKey, String queueName, ListenerOptions options, Consumer<Delivery> callback) {
+        Listener listener = new Listener()
+            .setRoutingKey(routingKey)
+            .setQueueName(queueName)
+            .setOptions(options)
+            .setCallback(callback)
+            .setInvoker(new HandlerInvoker(callback, options, metrics));
+
+        return register(listener);
+    }
+
+    @Override
+    public String registerBatchListener(String routingKey, String queueName, ListenerOptions options, int maxSize, long maxWaitMSec, Consumer<List<Delivery>> callback) {
+        Listener listener = new Listener()
+            .setRoutingKey(routingKey)
+            .setQueueName(queueName)
+            .setOptions(options)
+            .setInvoker(new BatchInvoker(callback, options, maxSize, maxWaitMSec, getTimer(), () -> {}, metrics));
+
+        return register(listener);
+    }
+
+    private String register(Listener listener) {
+        listener.setCTag(listener.getId());
+        listeners.put(listener.getId(), listener);
+        registerLocal(listener);
+        enqueue(() -> consume(listener));
+
+        return listener.getId();
+    }
+
+    @Override
+    public void deleteListener(String tag) {
+        Listener listener = listeners.remove(tag);
+        if(listener != null) {
+            deleteLocal(listener);
+            enqueue(() -> cancel(listener));
+        }
+    }
+
+    @Override
+    protected void stopConsuming() {
+        listeners.values().forEach(listener -> enqueue(() -> cancel(listener)));
+        listeners.clear();
+    }
+
+    @Override
+    protected void terminate() {
+        dispatcher.shutdown();
+    }
+
+    private boolean enqueue(Runnable task) {
+        try {
+            dispatcher.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Connector is terminated, there is nobody left to deliver to.
+            return false;
+        }
+    }
+
+    private void consume(Listener listener) {
+        MemoryQueue queue;
+        if(listener.getQueueName() != null) {
+            queue = queues.computeIfAbsent(listener.getQueueName(), name -> new MemoryQueue(name, !engraved));
+        } else {
+            queue = new MemoryQueue("amq.gen-" + queueCounter++, true);
+            queues.put(queue.name, queue);
+        }
+
+        bind(queue, listener.getRoutingKey());
+        consumers.put(listener.getCtag(), queue);
+        queue.listeners.add(listener);
+        queue.drainBacklog();
+    }
+
+    private void bind(MemoryQueue queue, String routingKey) {
+        for (Binding binding : bindings) {
+            if(binding.queue == queue && binding.pattern.getPattern().equals(routingKey)) {
+                return;
+            }
+        }
+        bindings.add(new Binding(TopicPattern.compile(routingKey), queue));
+        routes.clear();
+    }
+
+    private void cancel(Listener listener) {
+        MemoryQueue queue = consumers.remove(listener.getCtag());
+        if(queue == null) {
+            return;
+        }
+
+        queue.listeners.remove(listener);
+        if(queue.listeners.isEmpty() && queue.autoDelete) {
+            queues.remove(queue.name);
+            bindings.removeIf(binding -> binding.queue == queue);
+            routes.clear();
+        }
+    }
+
+    private void route(Message message) {
+        String routingKey = message.routingKey;
+        MemoryQueue[] targets = routes.get(routingKey);
+        if(targets == null) {
+            targets = bindings.stream()
+                .filter(binding -> binding.pattern.matches(routingKey))
+                .map(binding -> binding.queue)
+                .distinct()
+                .toArray(MemoryQueue[]::new);
+
+            if(routes.size() >= ROUTE_CACHE_SIZE) {
+                routes.clear();
+            }
+            routes.put(routingKey, targets);
+        }
+
+        for (MemoryQueue queue : targets) {
+            queue.deliver(message);
+        }
+    }
+
+    private void dispatch(Listener listener, Message message) {
+        if(isLocalCopy(listener, message.origin)) {
+            return;
+        }
+        inFlight.enter();
+        listener.getInvoker().invoke(new Delivery(message.body, codec, message.contentEncoding, maxDecompressedSize, message.routingKey, message.publishedAt), inFlight::exit);
+    }
+
+    private static class Message {
+        final byte[] body;
+        final String contentEncoding;
+        final String routingKey;
+        final long publishedAt;
+        final String origin;
+
+        Message(byte[] body, String contentEncoding, String routingKey, long publishedAt, String origin) {
+            this.body = body;
+            this.contentEncoding = contentEncoding;
+            this.routingKey = routingKey;
+            this.publishedAt = publishedAt;
+            this.origin = origin;
+        }
+    }
+
+    private static class Binding {
+        final TopicPattern pattern;
+        final MemoryQueue queue;
+
+        Binding(TopicPattern pattern, MemoryQueue queue) {
+            this.pattern = pattern;
+            this.queue = queue;
+        }
+    }
+
+    private class MemoryQueue {
+        final String name;
+        final boolean autoDelete;
+        final List<Listener> listeners = new ArrayList<>();
+        final ArrayDeque<Message> backlog = new ArrayDeque<>();
+        int next = 0;
+
+        MemoryQueue(String name, boolean autoDelete) {
+            this.name = name;
+            this.autoDelete = autoDelete;
+        }
+
+        void deliver(Message message) {
+            if(listeners.isEmpty()) {
+                backlog.add(message);
+                return;
+            }
+
+            if(next >= listeners.size()) {
+                next = 0;
+            }
+            dispatch(listeners.get(next++), message);
+        }
+
+        void drainBacklog() {
+            while(!backlog.isEmpty() && !listeners.isEmpty()) {
+                deliver(backlog.poll());
+            }
+        }
+    }
+}
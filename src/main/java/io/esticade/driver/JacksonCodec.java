@@ -0,0 +1,113 @@
+package io.esticade.driver;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.esticade.Event;
+
+import java.io.IOException;
+
+/**
+ * Codec for any of the formats Jackson has a streaming implementation for.
+ *
+ * <p>The reader and writer are shared between all threads. Jackson writes straight into bytes using buffers recycled
+ * per thread, so the only allocation left per event is the resulting array handed over to the transport.</p>
+ *
+ * <p>Events decoded for typed handlers are read with the streaming parser, the envelope fields are picked up one by
+ * one and the body is bound directly by the reader of the handler.</p>
+ */
+class JacksonCodec implements EventCodec {
+    private final String contentType;
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+
+    JacksonCodec(String contentType, JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
+
+        this.contentType = contentType;
+        this.factory = factory;
+        this.writer = mapper.writerFor(Event.class);
+        this.reader = mapper.readerFor(JsonNode.class);
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public byte[] encode(Event event) throws IOException {
+        return writer.writeValueAsBytes(event);
+    }
+
+    @Override
+    public JsonNode decode(byte[] body) throws IOException {
+        return reader.readValue(body);
+    }
+
+    @Override
+    public EventEnvelope decode(byte[] body, ObjectReader bodyReader) throws IOException {
+        return decode(body, 0, body.length, bodyReader);
+    }
+
+    @Override
+    public EventEnvelope decode(byte[] buffer, int offset, int length, ObjectReader bodyReader) throws IOException {
+        String eventId = null;
+        String name = null;
+        String correlationId = null;
+        String correlationBlock = null;
+        String parentId = null;
+        String service = null;
+        Object value = null;
+
+        try (JsonParser parser = factory.createParser(buffer, offset, length)) {
+            if(parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Event must be an object");
+            }
+
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+
+                switch (field) {
+                    case "eventId": eventId = text(parser, token); break;
+                    case "name": name = text(parser, token); break;
+                    case "correlationId": correlationId = text(parser, token); break;
+                    case "correlationBlock": correlationBlock = text(parser, token); break;
+                    case "parentId": parentId = text(parser, token); break;
+                    case "service": service = text(parser, token); break;
+                    case "body":
+                        if(bodyReader != null && token != JsonToken.VALUE_NULL) {
+                            value = bodyReader.readValue(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+
+        return new EventEnvelope(eventId, name, correlationId, correlationBlock, parentId, service, value);
+    }
+
+    private static String text(JsonParser parser, JsonToken token) throws IOException {
+        if(token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        parser.skipChildren();
+        return token.isScalarValue() ? parser.getValueAsString() : null;
+    }
+
+    @Override
+    public String toString() {
+        return contentType;
+    }
+}
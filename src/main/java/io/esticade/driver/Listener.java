@@ -1,7 +1,9 @@
 package io.esticade.driver;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.rabbitmq.client.Channel;
+import io.esticade.ListenerOptions;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 class Listener {
@@ -10,11 +12,17 @@ class Listener {
     private String routingKey;
     private String queueName;
 
-    private static int idCounter;
-    private Consumer<JsonNode> callback;
+    private static final AtomicLong idCounter = new AtomicLong();
+    private Consumer<Delivery> callback;
+    private ListenerOptions options;
+    private Channel channel;
+    private AckBatcher acks;
+    private HandlerInvoker invoker;
+    // Sequence number of the first emit delivered locally, 0 if the listener only gets the broker copies.
+    private volatile long localFrom;
 
     public Listener() {
-        id = String.valueOf(idCounter++);
+        id = String.valueOf(idCounter.getAndIncrement());
     }
 
     public String getId() {
@@ -48,12 +56,64 @@ class Listener {
         return this;
     }
 
-    public Listener setCallback(Consumer<JsonNode> callback) {
+    public Listener setCallback(Consumer<Delivery> callback) {
         this.callback = callback;
         return this;
     }
 
-    public Consumer<JsonNode> getCallback() {
+    public HandlerInvoker getInvoker() {
+        return invoker;
+    }
+
+    public Listener setInvoker(HandlerInvoker invoker) {
+        this.invoker = invoker;
+        return this;
+    }
+
+    public Consumer<Delivery> getCallback() {
         return callback;
     }
+
+    public ListenerOptions getOptions() {
+        return options;
+    }
+
+    public Listener setOptions(ListenerOptions options) {
+        this.options = options;
+        return this;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public Listener setChannel(Channel channel) {
+        this.channel = channel;
+        return this;
+    }
+
+    /**
+     * @return True if the events emitted in this process are delivered to the listener without the broker.
+     */
+    public boolean isLocal() {
+        return localFrom > 0;
+    }
+
+    public long getLocalFrom() {
+        return localFrom;
+    }
+
+    public Listener setLocalFrom(long localFrom) {
+        this.localFrom = localFrom;
+        return this;
+    }
+
+    public AckBatcher getAcks() {
+        return acks;
+    }
+
+    public Listener setAcks(AckBatcher acks) {
+        this.acks = acks;
+        return this;
+    }
 }
@@ -0,0 +1,362 @@
+package io.esticade.driver;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics of a single connection.
+ *
+ * <p>Counters are striped {@link LongAdder}s and timings go to {@link Histogram}s, so recording costs a few
+ * nanoseconds and never blocks. Read them from {@link Connector#getMetrics()} or over JMX.</p>
+ */
+public class Metrics {
+    /**
+     * Header carrying the time the event was published, in milliseconds since the epoch.
+     */
+    static final String PUBLISHED_HEADER = "x-esticade-published";
+
+    private static final AtomicInteger connectorCounter = new AtomicInteger();
+
+    private final ConcurrentMap<String, EventMetrics> events = new ConcurrentHashMap<>();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder ackFailures = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder outageNanos = new LongAdder();
+    private final AtomicLong outageStart = new AtomicLong();
+    private final LongAdder publishDrops = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong blockedStart = new AtomicLong();
+    private volatile IntSupplier outboundDepth = () -> 0;
+
+    private ObjectName objectName;
+
+    /**
+     * @return Names of all the events emitted or received so far.
+     */
+    public Set<String> getEventNames() {
+        return Collections.unmodifiableSet(events.keySet());
+    }
+
+    /**
+     * @param eventName Name of the event
+     * @return Metrics of the event, null if it has been neither emitted nor received.
+     */
+    public EventMetrics getEvent(String eventName) {
+        return events.get(eventName);
+    }
+
+    public long getPublishFailures() {
+        return publishFailures.sum();
+    }
+
+    public long getAckFailures() {
+        return ackFailures.sum();
+    }
+
+    /**
+     * @return Number of times the connection was restored after being lost.
+     */
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * @return Total time without a connection, including the ongoing outage.
+     */
+    public long getOutageMillis() {
+        long start = outageStart.get();
+        long ongoing = start != 0 ? System.nanoTime() - start : 0;
+        return TimeUnit.NANOSECONDS.toMillis(outageNanos.sum() + ongoing);
+    }
+
+    /**
+     * @return Number of emitted events waiting to be published. A growing depth means the broker does not keep up or
+     * is blocking the connection, producers can use it to shed load.
+     */
+    public int getOutboundDepth() {
+        return outboundDepth.getAsInt();
+    }
+
+    /**
+     * @return Number of emitted events rejected or dropped because the outbound queue was full.
+     */
+    public long getPublishDrops() {
+        return publishDrops.sum();
+    }
+
+    /**
+     * @return True while the broker blocks the connection for running low on memory or disk.
+     */
+    public boolean isConnectionBlocked() {
+        return blockedStart.get() != 0;
+    }
+
+    /**
+     * @return Total time the broker has blocked the connection, including the ongoing block.
+     */
+    public long getBlockedMillis() {
+        long start = blockedStart.get();
+        long ongoing = start != 0 ? System.nanoTime() - start : 0;
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum() + ongoing);
+    }
+
+    EventMetrics event(String eventName) {
+        EventMetrics metrics = events.get(eventName);
+        if(metrics == null) {
+            metrics = events.computeIfAbsent(eventName, name -> new EventMetrics());
+        }
+        return metrics;
+    }
+
+    void emitted(String eventName) {
+        event(eventName).emitted.increment();
+    }
+
+    /**
+     * Count the received event.
+     * @return Metrics of the event, for timing its handler.
+     */
+    EventMetrics received(Delivery delivery) {
+        EventMetrics metrics = event(eventName(delivery.getRoutingKey()));
+        metrics.received.increment();
+        if(delivery.getPublishedAt() > 0) {
+            metrics.endToEndLatency.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - delivery.getPublishedAt()));
+        }
+        return metrics;
+    }
+
+    void publishFailed() {
+        publishFailures.increment();
+    }
+
+    void ackFailed() {
+        ackFailures.increment();
+    }
+
+    void publishDropped() {
+        publishDrops.increment();
+    }
+
+    void connectionBlocked() {
+        blockedStart.compareAndSet(0, System.nanoTime());
+    }
+
+    void connectionUnblocked() {
+        long start = blockedStart.getAndSet(0);
+        if(start != 0) {
+            blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    void setOutboundDepth(IntSupplier outboundDepth) {
+        this.outboundDepth = outboundDepth;
+    }
+
+    void connectionLost() {
+        outageStart.compareAndSet(0, System.nanoTime());
+    }
+
+    void connectionRestored() {
+        long start = outageStart.getAndSet(0);
+        if(start != 0) {
+            outageNanos.add(System.nanoTime() - start);
+            reconnects.increment();
+        }
+    }
+
+    /**
+     * Routing keys are the correlation block and the event name joined with a dot.
+     */
+    private static String eventName(String routingKey) {
+        if(routingKey == null) {
+            return "";
+        }
+        int dot = routingKey.indexOf('.');
+        return dot >= 0 ? routingKey.substring(dot + 1) : routingKey;
+    }
+
+    void registerMBean() {
+        try {
+            objectName = new ObjectName("io.esticade:type=Metrics,connector=" + connectorCounter.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxView(), objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void unregisterMBean() {
+        try {
+            if(objectName != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                objectName = null;
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Metrics of a single event name.
+     */
+    public static class EventMetrics {
+        private final LongAdder emitted = new LongAdder();
+        private final LongAdder received = new LongAdder();
+        private final LongAdder duplicates = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final Histogram handlerTime = new Histogram();
+        private final Histogram endToEndLatency = new Histogram();
+
+        public long getEmitted() {
+            return emitted.sum();
+        }
+
+        public long getReceived() {
+            return received.sum();
+        }
+
+        /**
+         * @return Number of received events dropped as duplicates, included in the received count.
+         */
+        public long getDuplicates() {
+            return duplicates.sum();
+        }
+
+        /**
+         * @return Number of received events dropped because the handler executor rejected them, included in the
+         * received count.
+         */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return Time spent in the handlers of the event, in nanoseconds.
+         */
+        public Histogram getHandlerTime() {
+            return handlerTime;
+        }
+
+        /**
+         * Time from publishing the event to receiving it, in nanoseconds with millisecond precision.
+         *
+         * <p>Only events published by this library carry the publish time. Clocks of the hosts involved must be in
+         * sync for the values to be meaningful.</p>
+         */
+        public Histogram getEndToEndLatency() {
+            return endToEndLatency;
+        }
+
+        void handled(long nanos) {
+            handlerTime.record(nanos);
+        }
+
+        void duplicate() {
+            duplicates.increment();
+        }
+
+        void rejected() {
+            rejected.increment();
+        }
+    }
+
+    private class JmxView implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getEmitted() {
+            return perEvent(EventMetrics::getEmitted);
+        }
+
+        @Override
+        public Map<String, Long> getReceived() {
+            return perEvent(EventMetrics::getReceived);
+        }
+
+        @Override
+        public Map<String, Long> getDuplicates() {
+            return perEvent(EventMetrics::getDuplicates);
+        }
+
+        @Override
+        public Map<String, Long> getRejected() {
+            return perEvent(EventMetrics::getRejected);
+        }
+
+        @Override
+        public Map<String, Long> getHandlerTimeP50Micros() {
+            return perEvent(event -> TimeUnit.NANOSECONDS.toMicros(event.handlerTime.getValueAtPercentile(50)));
+        }
+
+        @Override
+        public Map<String, Long> getHandlerTimeP99Micros() {
+            return perEvent(event -> TimeUnit.NANOSECONDS.toMicros(event.handlerTime.getValueAtPercentile(99)));
+        }
+
+        @Override
+        public Map<String, Long> getEndToEndLatencyP50Millis() {
+            return perEvent(event -> TimeUnit.NANOSECONDS.toMillis(event.endToEndLatency.getValueAtPercentile(50)));
+        }
+
+        @Override
+        public Map<String, Long> getEndToEndLatencyP99Millis() {
+            return perEvent(event -> TimeUnit.NANOSECONDS.toMillis(event.endToEndLatency.getValueAtPercentile(99)));
+        }
+
+        @Override
+        public long getPublishFailures() {
+            return Metrics.this.getPublishFailures();
+        }
+
+        @Override
+        public long getAckFailures() {
+            return Metrics.this.getAckFailures();
+        }
+
+        @Override
+        public long getReconnects() {
+            return Metrics.this.getReconnects();
+        }
+
+        @Override
+        public long getOutageMillis() {
+            return Metrics.this.getOutageMillis();
+        }
+
+        @Override
+        public int getOutboundDepth() {
+            return Metrics.this.getOutboundDepth();
+        }
+
+        @Override
+        public long getPublishDrops() {
+            return Metrics.this.getPublishDrops();
+        }
+
+        @Override
+        public boolean isConnectionBlocked() {
+            return Metrics.this.isConnectionBlocked();
+        }
+
+        @Override
+        public long getBlockedMillis() {
+            return Metrics.this.getBlockedMillis();
+        }
+
+        private Map<String, Long> perEvent(ToLongFunction<EventMetrics> value) {
+            Map<String, Long> result = new TreeMap<>();
+            events.forEach((name, event) -> result.put(name, value.applyAsLong(event)));
+            return result;
+        }
+    }
+}
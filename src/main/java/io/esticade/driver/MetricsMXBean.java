@@ -0,0 +1,43 @@
+package io.esticade.driver;
+
+import java.util.Map;
+
+/**
+ * Metrics of the connection as published over JMX, under <code>io.esticade:type=Metrics</code> with a
+ * <code>connector</code> key numbering the connections of the process.
+ *
+ * <p>Maps are keyed by the event name. Use {@link Connector#getMetrics()} for the full histograms.</p>
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getEmitted();
+
+    Map<String, Long> getReceived();
+
+    Map<String, Long> getDuplicates();
+
+    Map<String, Long> getRejected();
+
+    Map<String, Long> getHandlerTimeP50Micros();
+
+    Map<String, Long> getHandlerTimeP99Micros();
+
+    Map<String, Long> getEndToEndLatencyP50Millis();
+
+    Map<String, Long> getEndToEndLatencyP99Millis();
+
+    long getPublishFailures();
+
+    long getAckFailures();
+
+    long getReconnects();
+
+    long getOutageMillis();
+
+    int getOutboundDepth();
+
+    long getPublishDrops();
+
+    boolean isConnectionBlocked();
+
+    long getBlockedMillis();
+}
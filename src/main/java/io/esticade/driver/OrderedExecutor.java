@@ -0,0 +1,119 @@
+package io.esticade.driver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Runs tasks with the same key one after another in submission order, tasks with different keys in parallel.
+ *
+ * <p>Each key with pending tasks occupies at most one thread of the underlying executor. Queues are dropped as soon
+ * as they drain, so the number of distinct keys seen over time does not matter.</p>
+ *
+ * <p>If the underlying executor rejects a key, every task pending for the key is handed to the rejection handler and
+ * the next task of the key starts over.</p>
+ */
+class OrderedExecutor {
+    private final Executor executor;
+    private final Consumer<Runnable> rejected;
+    private final ConcurrentMap<String, TaskQueue> queues = new ConcurrentHashMap<>();
+
+    OrderedExecutor(Executor executor) {
+        this(executor, task -> {
+            throw new RejectedExecutionException("Task rejected by the executor");
+        });
+    }
+
+    /**
+     * @param rejected Called with each task not run because the executor rejected it.
+     */
+    OrderedExecutor(Executor executor, Consumer<Runnable> rejected) {
+        this.executor = executor;
+        this.rejected = rejected;
+    }
+
+    void execute(String key, Runnable task) {
+        while(true) {
+            TaskQueue queue = queues.computeIfAbsent(key, TaskQueue::new);
+            switch(queue.offer(task)) {
+                case QUEUED:
+                    return;
+                case STARTED:
+                    try {
+                        executor.execute(queue);
+                    } catch (RejectedExecutionException e) {
+                        queue.reject().forEach(rejected);
+                    }
+                    return;
+                case CLOSED:
+                    // Queue drained and was removed in the meantime, try again with a fresh one.
+            }
+        }
+    }
+
+    private enum Offer { QUEUED, STARTED, CLOSED }
+
+    private class TaskQueue implements Runnable {
+        private final String key;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean running = false;
+        private boolean closed = false;
+
+        TaskQueue(String key) {
+            this.key = key;
+        }
+
+        synchronized Offer offer(Runnable task) {
+            if(closed) {
+                return Offer.CLOSED;
+            }
+
+            tasks.add(task);
+            if(running) {
+                return Offer.QUEUED;
+            }
+
+            running = true;
+            return Offer.STARTED;
+        }
+
+        /**
+         * Close the queue without running it.
+         * @return Tasks pending in the queue.
+         */
+        synchronized List<Runnable> reject() {
+            closed = true;
+            queues.remove(key, this);
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            return pending;
+        }
+
+        @Override
+        public void run() {
+            while(true) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if(task == null) {
+                        running = false;
+                        closed = true;
+                        queues.remove(key, this);
+                        return;
+                    }
+                }
+
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
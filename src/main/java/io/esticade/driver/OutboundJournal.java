@@ -0,0 +1,421 @@
+package io.esticade.driver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongConsumer;
+
+/**
+ * Append-only journal of the events emitted while the broker is unreachable.
+ *
+ * <p>Records are written into memory-mapped segment files, so appending costs a copy into the page cache and the
+ * records survive the process crashing. Once the connection is back the records are read in the order they were
+ * written and published again, a segment file is deleted as soon as all of its records are confirmed by the
+ * broker.</p>
+ *
+ * <p>While the journal is active every emit goes through it, so the events published after an outage keep their
+ * order. The journal deactivates once the replay has caught up with the appends.</p>
+ *
+ * <p>Records of a segment are only confirmed as a whole, after a crash or a failed replay the segment is replayed
+ * from the start and the broker may get some of its events twice.</p>
+ *
+ * <p>Record layout: length of the rest of the record, routing key, content type, content encoding, origin, publish
+ * time and body. A length of zero marks the end of the records in a segment, the length is written last so a half
+ * written record is never read.</p>
+ */
+class OutboundJournal {
+    private static final String PREFIX = "outbound-";
+    private static final String SUFFIX = ".journal";
+
+    private final File directory;
+    private final int segmentSize;
+
+    // Oldest first, the last one is appended to.
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private boolean active;
+
+    // Read position of the replay
+    private long readSegmentId;
+    private int readOffset;
+    private int generation;
+
+    /**
+     * Open the journal, the records left by a previous process are replayed first.
+     *
+     * @param directory Directory of the segment files, created if missing
+     * @param segmentSize Size of a segment file in bytes
+     */
+    OutboundJournal(File directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the journal directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        Arrays.sort(files);
+        for (File file : files) {
+            Segment segment = new Segment(segmentId(file), file, (int) file.length());
+            segment.recover();
+            segment.full = true;
+            if(segment.records == 0) {
+                segment.delete();
+            } else {
+                segments.add(segment);
+                nextSegmentId = segment.id + 1;
+            }
+        }
+
+        active = !segments.isEmpty();
+    }
+
+    /**
+     * Route the emits through the journal until the replay catches up.
+     */
+    synchronized void activate() {
+        active = true;
+    }
+
+    synchronized boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Append the record if the journal is active.
+     *
+     * @return Position of the record, or -1 if the journal is not active and the event should be published directly.
+     */
+    synchronized long appendIfActive(Record record) throws IOException {
+        if(!active) {
+            return -1;
+        }
+
+        byte[] routingKey = record.routingKey.getBytes(StandardCharsets.UTF_8);
+        byte[] contentType = bytes(record.contentType);
+        byte[] contentEncoding = bytes(record.contentEncoding);
+        byte[] origin = bytes(record.origin);
+        int length = 2 + routingKey.length + 2 + contentType.length + 2 + contentEncoding.length + 2 + origin.length
+            + 8 + 4 + record.body.length;
+
+        Segment segment = segments.peekLast();
+        if(segment == null || segment.full || segment.writeOffset + 4 + length + 4 > segment.buffer.capacity()) {
+            if(segment != null) {
+                segment.full = true;
+            }
+            segment = newSegment(4 + length + 4);
+        }
+
+        ByteBuffer buffer = segment.buffer;
+        int offset = segment.writeOffset;
+        // Through Buffer, the covariant override of later JDKs does not exist on Java 8.
+        ((Buffer) buffer).position(offset + 4);
+        putBytes(buffer, routingKey);
+        putBytes(buffer, contentType);
+        putBytes(buffer, contentEncoding);
+        putBytes(buffer, origin);
+        buffer.putLong(record.publishedAt);
+        buffer.putInt(record.body.length);
+        buffer.put(record.body);
+        buffer.putInt(offset, length);
+
+        segment.writeOffset = offset + 4 + length;
+        segment.records++;
+        return position(segment, offset);
+    }
+
+    /**
+     * Next record to replay. Once the replay has caught up with the appends, the journal deactivates and null is
+     * returned, new emits are published directly from there on.
+     */
+    synchronized Record next() {
+        while(true) {
+            Segment segment = firstFrom(readSegmentId);
+            if(segment == null) {
+                active = false;
+                return null;
+            }
+            if(segment.id != readSegmentId) {
+                readSegmentId = segment.id;
+                readOffset = 0;
+            }
+
+            if(readOffset < segment.writeOffset) {
+                Record record = segment.read(readOffset, generation);
+                readOffset += 4 + segment.buffer.getInt(readOffset);
+                segment.replayed++;
+                return record;
+            }
+
+            if(segment == segments.peekLast()) {
+                // Caught up, later appends go to a new segment so this one can go once its records are confirmed.
+                segment.full = true;
+                deleteIfDone(segment);
+                active = false;
+                return null;
+            }
+
+            readSegmentId = segment.id + 1;
+            readOffset = 0;
+            deleteIfDone(segment);
+        }
+    }
+
+    /**
+     * Publishes the replayed records.
+     */
+    interface Replayer {
+        boolean isOpen();
+
+        /**
+         * @return Future completed once the broker has confirmed the record, exceptionally if it was not accepted.
+         */
+        CompletableFuture<?> publish(Record record) throws IOException;
+    }
+
+    /**
+     * Publish the records in the order they were written, with up to the window of them unconfirmed at a time.
+     *
+     * <p>Goes on until the journal has caught up and every replayed record is confirmed. A record which is not
+     * accepted rewinds the journal and the replay goes on from the oldest record not yet confirmed.</p>
+     *
+     * @param onConfirmed Called with the position of every confirmed record
+     * @return True once the journal has deactivated, false if the replayer closed first.
+     * @throws IOException If publishing failed, the journal is rewound.
+     */
+    boolean replay(Replayer replayer, int window, LongConsumer onConfirmed) throws IOException, InterruptedException {
+        Semaphore unconfirmed = new Semaphore(window);
+        while(replayer.isOpen()) {
+            Record record = next();
+            if(record == null) {
+                // Caught up, but a record still waiting for its confirm may yet rewind the journal.
+                unconfirmed.acquire(window);
+                unconfirmed.release(window);
+                if(!isActive()) {
+                    return true;
+                }
+                continue;
+            }
+
+            unconfirmed.acquire();
+            CompletableFuture<?> publish;
+            try {
+                publish = replayer.publish(record);
+            } catch (IOException e) {
+                unconfirmed.release();
+                rewind();
+                throw e;
+            }
+            publish.whenComplete((result, e) -> {
+                if(e != null) {
+                    rewind();
+                } else {
+                    confirmed(record);
+                    onConfirmed.accept(record.getPosition());
+                }
+                unconfirmed.release();
+            });
+        }
+        return false;
+    }
+
+    /**
+     * The broker confirmed the replayed record.
+     */
+    synchronized void confirmed(Record record) {
+        if(record.generation != generation) {
+            return;
+        }
+        Segment segment = find(record.segmentId);
+        if(segment != null) {
+            segment.confirmed++;
+            deleteIfDone(segment);
+        }
+    }
+
+    /**
+     * Replaying a record failed, start over from the oldest record not yet confirmed.
+     */
+    synchronized void rewind() {
+        generation++;
+        readSegmentId = 0;
+        readOffset = 0;
+        for (Segment segment : segments) {
+            segment.replayed = 0;
+            segment.confirmed = 0;
+        }
+        active = true;
+    }
+
+    /**
+     * @return Number of records not yet confirmed.
+     */
+    synchronized int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.records - segment.confirmed;
+        }
+        return size;
+    }
+
+    private void deleteIfDone(Segment segment) {
+        if(segment.full && segment.replayed == segment.records && segment.confirmed == segment.records) {
+            segments.remove(segment);
+            segment.delete();
+        }
+    }
+
+    private Segment newSegment(int minimumSize) throws IOException {
+        long id = nextSegmentId++;
+        File file = new File(directory, String.format("%s%020d%s", PREFIX, id, SUFFIX));
+        Segment segment = new Segment(id, file, Math.max(segmentSize, minimumSize));
+        segments.add(segment);
+        return segment;
+    }
+
+    private Segment firstFrom(long segmentId) {
+        for (Segment segment : segments) {
+            if(segment.id >= segmentId) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private Segment find(long segmentId) {
+        for (Segment segment : segments) {
+            if(segment.id == segmentId) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private static long position(Segment segment, int offset) {
+        return (segment.id << 32) | offset;
+    }
+
+    private static long segmentId(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getShort() & 0xffff];
+        buffer.get(value);
+        return value.length == 0 ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Emitted event as stored in the journal.
+     */
+    static class Record {
+        final String routingKey;
+        final String contentType;
+        final String contentEncoding;
+        final String origin;
+        final long publishedAt;
+        final byte[] body;
+
+        // Where the record was read from, for confirming it.
+        private long segmentId;
+        private long position;
+        private int generation;
+
+        Record(String routingKey, String contentType, String contentEncoding, String origin, long publishedAt, byte[] body) {
+            this.routingKey = routingKey;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.origin = origin;
+            this.publishedAt = publishedAt;
+            this.body = body;
+        }
+
+        /**
+         * @return Position returned when the record was appended.
+         */
+        long getPosition() {
+            return position;
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        final File file;
+        final ByteBuffer buffer;
+        int writeOffset;
+        int records;
+        int replayed;
+        int confirmed;
+        boolean full;
+
+        Segment(long id, File file, int size) throws IOException {
+            this.id = id;
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                // The mapping stays valid after the channel is closed.
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        /**
+         * Find the end of the records written by a previous process.
+         */
+        void recover() {
+            int offset = 0;
+            while(offset + 4 <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if(length <= 0 || offset + 4 + length > buffer.capacity()) {
+                    break;
+                }
+                offset += 4 + length;
+                records++;
+            }
+            writeOffset = offset;
+        }
+
+        Record read(int offset, int generation) {
+            ByteBuffer view = buffer.duplicate();
+            ((Buffer) view).position(offset + 4);
+            String routingKey = getString(view);
+            String contentType = getString(view);
+            String contentEncoding = getString(view);
+            String origin = getString(view);
+            long publishedAt = view.getLong();
+            byte[] body = new byte[view.getInt()];
+            view.get(body);
+
+            Record record = new Record(routingKey, contentType, contentEncoding, origin, publishedAt, body);
+            record.segmentId = id;
+            record.position = position(this, offset);
+            record.generation = generation;
+            return record;
+        }
+
+        void delete() {
+            if(!file.delete()) {
+                System.err.println("ESTICADE: Unable to delete journal segment " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package io.esticade.driver;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import io.esticade.Event;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded queue between the emitting threads and the broker.
+ *
+ * <p>Emitting threads only encode the event and queue it, the publishes are made by a sender thread per lane. When
+ * the broker blocks the connection for running out of memory or disk, the senders stop and the queue fills up instead
+ * of every emitting thread hanging in a publish. What happens once the queue is full is decided by the
+ * {@link Overflow} policy.</p>
+ *
+ * <p>Emitting threads are spread over the lanes the same way as over the publishing channels, so the events emitted
+ * from the same thread keep their order.</p>
+ */
+class OutboundQueue {
+    /**
+     * What to do with an event emitted while the queue is full.
+     */
+    enum Overflow {
+        /**
+         * Wait for room until the block timeout passes, then reject the event.
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued event to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Reject the event right away.
+         */
+        FAIL_FAST;
+
+        static Overflow forName(String name) {
+            switch(name.toLowerCase()) {
+                case "block":
+                    return BLOCK;
+                case "dropoldest":
+                case "drop_oldest":
+                    return DROP_OLDEST;
+                case "failfast":
+                case "fail_fast":
+                    return FAIL_FAST;
+                default:
+                    throw new IllegalArgumentException("Unknown outbound overflow policy: " + name);
+            }
+        }
+    }
+
+    /**
+     * Publishes a queued event on the publishing channel of the lane.
+     */
+    interface Sender {
+        void send(int lane, Pending publish);
+    }
+
+    private final Lane[] lanes;
+    private final Overflow overflow;
+    private final long blockTimeoutMSec;
+    private final Sender sender;
+    private final InFlight inFlight;
+    private final Metrics metrics;
+
+    private final Object gate = new Object();
+    // Notified once the queue drains, the broker blocks the connection or the queue is closed.
+    private final Object drain = new Object();
+    // Events holding room in a lane, from being queued until published or dropped.
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean blocked = false;
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity Number of events queued at most, divided over the lanes
+     * @param lanes Number of sender threads
+     */
+    OutboundQueue(int capacity, int lanes, Overflow overflow, long blockTimeoutMSec, Sender sender, InFlight inFlight, Metrics metrics) {
+        this.overflow = overflow;
+        this.blockTimeoutMSec = blockTimeoutMSec;
+        this.sender = sender;
+        this.inFlight = inFlight;
+        this.metrics = metrics;
+
+        int laneCapacity = Math.max(1, (capacity + lanes - 1) / lanes);
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(i, laneCapacity);
+        }
+        for (Lane lane : this.lanes) {
+            lane.thread.start();
+        }
+    }
+
+    /**
+     * Queue the publish on the lane of the current thread.
+     *
+     * @throws RejectedExecutionException If the queue is full and the policy does not allow waiting any longer, or
+     * once the queue is closed.
+     */
+    void offer(Pending publish) {
+        if(closed) {
+            throw new RejectedExecutionException("Connector is terminated");
+        }
+
+        Lane lane = lanes[(int) (Thread.currentThread().getId() % lanes.length)];
+        inFlight.enter();
+
+        switch(overflow) {
+            case DROP_OLDEST:
+                while(!lane.room.tryAcquire()) {
+                    Pending oldest = lane.takeOldest();
+                    if(oldest != null) {
+                        lane.discard(oldest, new RejectedExecutionException("Dropped from the full outbound queue"));
+                    } else {
+                        // The oldest event is being published right now, its room is about to free up.
+                        Thread.yield();
+                    }
+                }
+                break;
+            case FAIL_FAST:
+                if(!lane.room.tryAcquire()) {
+                    reject(publish, "Outbound queue is full");
+                }
+                break;
+            default:
+                try {
+                    if(!lane.room.tryAcquire(blockTimeoutMSec, TimeUnit.MILLISECONDS)) {
+                        reject(publish, "Outbound queue stayed full for " + blockTimeoutMSec + " ms");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    reject(publish, "Interrupted while waiting for room in the outbound queue");
+                }
+        }
+        pending.incrementAndGet();
+        lane.queue.add(publish);
+    }
+
+    /**
+     * @return Number of events waiting to be published.
+     */
+    int size() {
+        int size = 0;
+        for (Lane lane : lanes) {
+            size += lane.queue.size() + (lane.held.get() != null ? 1 : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Wait until every queued event has been published or dropped.
+     * @return False if the timeout passed first, or the broker is blocking the connection or the queue is closed, which
+     * holds the events back.
+     */
+    boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drain) {
+            while(pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if(blocked || closed || remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drain, remaining);
+            }
+            return true;
+        }
+    }
+
+    boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * Stop publishing until {@link #unblock()}, the broker would not read the publishes anyway.
+     */
+    void block() {
+        blocked = true;
+        signalDrain();
+    }
+
+    void unblock() {
+        synchronized (gate) {
+            blocked = false;
+            gate.notifyAll();
+        }
+    }
+
+    /**
+     * Stop accepting events and give the senders the timeout to publish the events already queued, the ones left
+     * after that are failed.
+     */
+    void close(long timeout, TimeUnit unit) {
+        closed = true;
+        synchronized (gate) {
+            gate.notifyAll();
+        }
+        signalDrain();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        for (Lane lane : lanes) {
+            lane.thread.interrupt();
+            Pending publish;
+            while((publish = lane.takeOldest()) != null) {
+                lane.discard(publish, new RejectedExecutionException("Connector is terminated"));
+            }
+        }
+    }
+
+    /**
+     * The event gave its room in the lane back.
+     */
+    private void released(Lane lane) {
+        lane.room.release();
+        if(pending.decrementAndGet() == 0) {
+            signalDrain();
+        }
+    }
+
+    private void signalDrain() {
+        synchronized (drain) {
+            drain.notifyAll();
+        }
+    }
+
+    private void reject(Pending publish, String reason) {
+        RejectedExecutionException cause = new RejectedExecutionException(reason);
+        drop(publish, cause);
+        throw cause;
+    }
+
+    private void drop(Pending publish, Throwable cause) {
+        metrics.publishDropped();
+        if(publish.confirmed != null) {
+            publish.confirmed.completeExceptionally(cause);
+        }
+        inFlight.exit();
+    }
+
+    /**
+     * Events of a lane, from the queue to the broker. An event holds its room in the lane until it is published or
+     * dropped, including while the sender holds it back for a blocked connection.
+     */
+    private class Lane implements Runnable {
+        final int index;
+        final Semaphore room;
+        final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        final Thread thread;
+        // Event taken from the queue just as the broker blocked the connection, published once unblocked.
+        final AtomicReference<Pending> held = new AtomicReference<>();
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.room = new Semaphore(capacity);
+            this.thread = new Thread(this, "esticade-publisher-" + (index + 1));
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Once closed, publish what is left unless the broker is blocking the connection.
+                while(!closed || (!blocked && (held.get() != null || !queue.isEmpty()))) {
+                    awaitUnblocked();
+                    if(held.get() == null) {
+                        Pending polled = queue.poll(100, TimeUnit.MILLISECONDS);
+                        if(polled != null) {
+                            held.set(polled);
+                        }
+                    }
+                    // The broker may have blocked the connection while waiting for the event.
+                    if(blocked) {
+                        continue;
+                    }
+
+                    Pending publish = held.getAndSet(null);
+                    if(publish != null) {
+                        send(publish);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Closed, the events left are failed by close
+            }
+
+            Pending publish = held.getAndSet(null);
+            if(publish != null) {
+                discard(publish, new RejectedExecutionException("Connector is terminated"));
+            }
+        }
+
+        /**
+         * @return Oldest event of the lane not being published yet, null if there is none.
+         */
+        Pending takeOldest() {
+            Pending oldest = held.getAndSet(null);
+            return oldest != null ? oldest : queue.poll();
+        }
+
+        void discard(Pending publish, Throwable cause) {
+            released(this);
+            drop(publish, cause);
+        }
+
+        private void send(Pending publish) {
+            try {
+                sender.send(index, publish);
+            } catch (RuntimeException e) {
+                metrics.publishFailed();
+                if(publish.confirmed != null) {
+                    publish.confirmed.completeExceptionally(e);
+                }
+            } finally {
+                released(this);
+                inFlight.exit();
+            }
+        }
+
+        private void awaitUnblocked() throws InterruptedException {
+            if(!blocked) {
+                return;
+            }
+            synchronized (gate) {
+                while(blocked && !closed) {
+                    gate.wait();
+                }
+            }
+        }
+    }
+
+    /**
+     * Encoded event waiting to be published.
+     */
+    static class Pending {
+        final String routingKey;
+        final BasicProperties props;
+        final byte[] body;
+        final Event event;
+        // Null when nobody waits for the confirm
+        final CompletableFuture<Event> confirmed;
+
+        Pending(String routingKey, BasicProperties props, byte[] body, Event event, CompletableFuture<Event> confirmed) {
+            this.routingKey = routingKey;
+            this.props = props;
+            this.body = body;
+            this.event = event;
+            this.confirmed = confirmed;
+        }
+    }
+}
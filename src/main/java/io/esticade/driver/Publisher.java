@@ -0,0 +1,146 @@
+package io.esticade.driver;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import io.esticade.Event;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Publishes events on a single channel in publisher confirm mode.
+ *
+ * <p>Any number of publishes can be in flight, the futures are completed by the sequence number the broker acks or
+ * nacks, including the ones covered by a multiple confirm. Publishes which nobody waits for are tracked only to
+ * count them as in flight until confirmed.</p>
+ */
+class Publisher implements ConfirmListener {
+    private static final PendingPublish UNOBSERVED = new PendingPublish(null);
+
+    private final Channel channel;
+    private final String exchange;
+    private final InFlight inFlight;
+    private final Metrics metrics;
+    private final ConcurrentNavigableMap<Long, PendingPublish> outstanding = new ConcurrentSkipListMap<>();
+
+    Publisher(Channel channel, String exchange, InFlight inFlight, Metrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.channel = channel;
+        this.exchange = exchange;
+        this.inFlight = inFlight;
+
+        channel.confirmSelect();
+        channel.addConfirmListener(this);
+        channel.addShutdownListener(this::failAll);
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    synchronized void publish(String routingKey, BasicProperties props, byte[] body) throws IOException {
+        long seqNo = channel.getNextPublishSeqNo();
+        inFlight.enter();
+        outstanding.put(seqNo, UNOBSERVED);
+
+        try {
+            channel.basicPublish(exchange, routingKey, props, body);
+        } catch (IOException e) {
+            if(outstanding.remove(seqNo) != null) {
+                inFlight.exit();
+            }
+            metrics.publishFailed();
+            throw e;
+        }
+    }
+
+    /**
+     * Publish and return future which completes once the broker has confirmed the publish.
+     */
+    synchronized CompletableFuture<Event> publishAsync(String routingKey, BasicProperties props, byte[] body, Event event) {
+        long seqNo = channel.getNextPublishSeqNo();
+        PendingPublish publish = new PendingPublish(event);
+        inFlight.enter();
+        outstanding.put(seqNo, publish);
+
+        try {
+            channel.basicPublish(exchange, routingKey, props, body);
+        } catch (IOException e) {
+            if(outstanding.remove(seqNo) != null) {
+                inFlight.exit();
+            }
+            metrics.publishFailed();
+            publish.completeExceptionally(e);
+        }
+        return publish;
+    }
+
+    /**
+     * Fail all the outstanding publishes once the channel is closed and no more confirms will arrive.
+     */
+    private void failAll(Throwable cause) {
+        settle(outstanding, cause);
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple, null);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple, new IOException("Broker rejected the event"));
+    }
+
+    private void settle(long deliveryTag, boolean multiple, Throwable cause) {
+        if(multiple) {
+            settle(outstanding.headMap(deliveryTag, true), cause);
+        } else {
+            PendingPublish publish = outstanding.remove(deliveryTag);
+            if(publish != null) {
+                settle(publish, cause);
+            }
+        }
+    }
+
+    private void settle(PendingPublish publish, Throwable cause) {
+        if(publish != UNOBSERVED) {
+            publish.settle(cause);
+        }
+        if(cause != null) {
+            metrics.publishFailed();
+        }
+        inFlight.exit();
+    }
+
+    private void settle(ConcurrentNavigableMap<Long, PendingPublish> publishes, Throwable cause) {
+        Map.Entry<Long, PendingPublish> entry;
+        while((entry = publishes.pollFirstEntry()) != null) {
+            settle(entry.getValue(), cause);
+        }
+    }
+
+    private static class PendingPublish extends CompletableFuture<Event> {
+        private final Event event;
+
+        PendingPublish(Event event) {
+            this.event = event;
+        }
+
+        void settle(Throwable cause) {
+            if(cause == null) {
+                complete(event);
+            } else {
+                completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -1,46 +1,87 @@
 package io.esticade.driver;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rabbitmq.client.*;
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.ConnectionFactory;
 import io.esticade.Event;
+import io.esticade.ListenerOptions;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 class RabbitMQ extends Connector implements ShutdownListener {
+    private static final int RECOVERY_THREADS = 8;
+    private static final long OUTBOUND_CLOSE_SEC = 5;
+    private static final int REPLAY_WINDOW = 1000;
+    private static final long REPLAY_RETRY_SEC = 1;
+
     private final boolean engraved;
     private final String exchange;
     private final String connectionUri;
     private final ConnectionFactory factory;
+    private final EventCodec codec;
+    private final int publishChannels;
+    private final int prefetch;
+    private final int ackBatchSize;
+    private final long ackInterval;
+    private final OutboundQueue outbound;
+    private final OutboundJournal journal;
+    // Confirmations of the journaled events someone waits for, by the position in the journal
+    private final Map<Long, Runnable> journalWaiters = new ConcurrentHashMap<>();
+
+    private final ExecutorService reconnector = daemonThread("esticade-reconnect");
+    private final ExecutorService replayer = daemonThread("esticade-journal-replay");
+    private CompletableFuture<Void> reconnecting;
+
+    private volatile Connection connection;
+    private volatile Channel amqpChannel;
+    private volatile Publisher[] publishers;
+
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+    private final DeclarationCache declared = new DeclarationCache();
 
-    private Connection connection;
-    private BasicProperties props;
-    private ObjectMapper mapper;
-    private Channel amqpChannel;
-
-    private HashMap<String, Listener> listeners = new HashMap<>();
-
-    private int pending = 0;
     private boolean channelRetryEnabled = true;
 
-    RabbitMQ(String connectionUri, String exchange, boolean engraved) throws NoSuchAlgorithmException, KeyManagementException, URISyntaxException, IOException, TimeoutException {
-        this.exchange = exchange;
-        this.engraved = engraved;
-        this.connectionUri = connectionUri;
-
-        mapper = new ObjectMapper();
-
-        props = new BasicProperties.Builder()
-                .contentType("application/json")
-                .build();
+    RabbitMQ(Configuration config) throws NoSuchAlgorithmException, KeyManagementException, URISyntaxException, IOException, TimeoutException {
+        super(config);
+        this.exchange = config.getExchange();
+        this.engraved = config.isEngraved();
+        this.connectionUri = config.getAmqpUrl();
+        this.codec = EventCodecs.forName(config.getCodec());
+        this.publishChannels = Math.max(1, config.getPublishChannels());
+        this.prefetch = config.getPrefetch();
+        this.ackBatchSize = config.getAckBatchSize();
+        this.ackInterval = config.getAckInterval();
+        this.outbound = new OutboundQueue(
+            config.getOutboundQueueSize(),
+            publishChannels,
+            OutboundQueue.Overflow.forName(config.getOutboundOverflow()),
+            config.getOutboundBlockTimeout(),
+            this::send,
+            inFlight,
+            metrics
+        );
+        this.journal = config.getOutboundJournal() != null
+            ? new OutboundJournal(new File(config.getOutboundJournal()), config.getOutboundJournalSegmentSize())
+            : null;
+        metrics.setOutboundDepth(() -> outbound.size() + (journal != null ? journal.size() : 0));
 
         factory = new ConnectionFactory();
         factory.setUri(connectionUri);
@@ -48,33 +89,100 @@ class RabbitMQ extends Connector implements ShutdownListener {
         // Hack to support default vhost, for some reason the library is parsing it incorrectly from the URL.
         if(factory.getVirtualHost().equals(""))
             factory.setVirtualHost("/");
+
+        if(journal != null && journal.isActive()) {
+            // Replay what a previous process left in the journal.
+            connect();
+        }
+    }
+
+    private static ExecutorService daemonThread(String name) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     private Channel getChannelRaw() throws URISyntaxException, NoSuchAlgorithmException, KeyManagementException, IOException, TimeoutException {
+        declared.clear();
         connection = factory.newConnection();
         Channel channel = connection.createChannel();
         channel.exchangeDeclare(this.exchange, "topic", true);
 
+        Publisher[] stripes = new Publisher[publishChannels];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Publisher(connection.createChannel(), exchange, inFlight, metrics);
+        }
+        publishers = stripes;
+
         connection.addShutdownListener(this);
+        connection.addBlockedListener(new BlockedListener() {
+            @Override
+            public void handleBlocked(String reason) {
+                System.err.println("ESTICADE: Connection blocked by the broker, holding back publishes: " + reason);
+                outbound.block();
+                metrics.connectionBlocked();
+            }
+
+            @Override
+            public void handleUnblocked() {
+                System.err.println("ESTICADE: Connection unblocked by the broker");
+                outbound.unblock();
+                metrics.connectionUnblocked();
+            }
+        });
+        // A new connection starts out unblocked.
+        outbound.unblock();
+        metrics.connectionUnblocked();
 
         return channel;
     }
 
+    private boolean isConnected() {
+        Channel channel = amqpChannel;
+        return channel != null && channel.isOpen();
+    }
+
+    /**
+     * Channel of the connection, waiting for the connection to be restored if needed.
+     *
+     * <p>Only called from the threads of the connector, the emitting threads never wait for the connection.</p>
+     */
     private Channel getChannel(){
+        Channel channel = amqpChannel;
+        if(channel != null && channel.isOpen()) {
+            return channel;
+        }
+        connect().join();
+        return amqpChannel;
+    }
+
+    /**
+     * Connect on the reconnect thread, unless already connecting.
+     * @return Future completed once connected and the listeners are restored.
+     */
+    private synchronized CompletableFuture<Void> connect() {
+        if(reconnecting == null || reconnecting.isDone()) {
+            reconnecting = CompletableFuture.runAsync(this::reconnect, reconnector);
+        }
+        return reconnecting;
+    }
+
+    private void reconnect(){
         final int INITIAL_RETRY_SEC = 1;
         final int MAXIMUM_RETRY_SEC = 512;
 
         int timeoutSec = INITIAL_RETRY_SEC;
-        Channel channel = null;
 
-        while(timeoutSec <= MAXIMUM_RETRY_SEC){
+        while(timeoutSec <= MAXIMUM_RETRY_SEC && channelRetryEnabled){
             try {
-                if(amqpChannel != null && amqpChannel.isOpen()){
-                    channel = amqpChannel;
-                } else {
-                    amqpChannel = channel = getChannelRaw();
-                    timeoutSec = INITIAL_RETRY_SEC;
+                if(!isConnected()) {
+                    Channel channel = getChannelRaw();
                     reRegisterListeners();
+                    // Publishing waits until the listeners are back, so none of them miss the events.
+                    amqpChannel = channel;
+                    metrics.connectionRestored();
                 }
                 break;
             } catch (URISyntaxException e) {
@@ -97,66 +205,415 @@ class RabbitMQ extends Connector implements ShutdownListener {
             }
         }
 
-        return channel;
+        if(journal != null && journal.isActive()) {
+            replayer.execute(this::replayJournal);
+        }
     }
 
+    /**
+     * Publish the journaled events in the order they were emitted, without waiting for the confirms of the previous
+     * ones. Up to {@link #REPLAY_WINDOW} events are unconfirmed at a time.
+     *
+     * <p>Events queued before the outage are published first. A nacked event rewinds the journal and the replay
+     * carries on from the oldest unconfirmed event. If the queued events do not drain, for the broker blocking the
+     * connection or within {@link #REPLAY_RETRY_SEC}, or the replay itself fails while the connection stays up, it is
+     * tried again after {@link #REPLAY_RETRY_SEC}, otherwise the next connection starts it over.</p>
+     */
+    private void replayJournal() {
+        try {
+            if(!outbound.awaitDrained(REPLAY_RETRY_SEC, TimeUnit.SECONDS)) {
+                scheduleReplay();
+                return;
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        Channel channel = null;
+        try {
+            if(!isConnected() || !journal.isActive()) {
+                return;
+            }
+
+            channel = connection.createChannel();
+            Publisher publisher = new Publisher(channel, exchange, inFlight, metrics);
+            journal.replay(new OutboundJournal.Replayer() {
+                @Override
+                public boolean isOpen() {
+                    return publisher.isOpen();
+                }
+
+                @Override
+                public CompletableFuture<?> publish(OutboundJournal.Record record) {
+                    return publisher.publishAsync(record.routingKey, properties(record), record.body, null);
+                }
+            }, REPLAY_WINDOW, position -> {
+                Runnable waiter = journalWaiters.remove(position);
+                if(waiter != null) {
+                    waiter.run();
+                }
+            });
+        } catch (IOException e) {
+            journal.rewind();
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            journal.rewind();
+            return;
+        } finally {
+            closeQuietly(channel);
+        }
+
+        scheduleReplay();
+    }
+
+    /**
+     * Try the replay again later if the journal still has events and the connection is up.
+     */
+    private void scheduleReplay() {
+        if(journal.isActive() && isConnected()) {
+            getTimer().schedule(this::retryReplay, REPLAY_RETRY_SEC, TimeUnit.SECONDS);
+        }
+    }
+
+    private void retryReplay() {
+        try {
+            replayer.execute(this::replayJournal);
+        } catch (RejectedExecutionException e) {
+            // Connector is terminated, the journal is replayed by the next process.
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            if(channel != null && channel.isOpen()) {
+                channel.close();
+            }
+        } catch (IOException | TimeoutException | ShutdownSignalException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restore the consumers of all the listeners on the new connection.
+     *
+     * <p>Every listener has a channel of its own, so the listeners are restored in parallel over a few threads instead
+     * of paying the round trips of each listener one after another.</p>
+     */
     private void reRegisterListeners() {
-        if(listeners.size() > 0){
-            listeners.forEach((s, listener) -> registerListenerRaw(listener));
+        if(listeners.isEmpty()) {
+            return;
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService recovery = Executors.newFixedThreadPool(
+            Math.min(RECOVERY_THREADS, listeners.size()),
+            runnable -> new Thread(runnable, "esticade-recovery-" + threadCounter.incrementAndGet())
+        );
+
+        try {
+            CompletableFuture.allOf(listeners.values().stream()
+                .map(listener -> CompletableFuture.runAsync(() -> registerListenerRaw(listener), recovery))
+                .toArray(CompletableFuture[]::new)
+            ).join();
+        } finally {
+            recovery.shutdown();
+        }
+    }
+
+    /**
+     * Publishing channel of a lane of the outbound queue.
+     *
+     * <p>Every lane has a channel of its own, so the senders never wait for each other. The events emitted from the
+     * same thread always go through the same lane and channel and keep their order.</p>
+     */
+    private Publisher getPublisher(int stripe) throws IOException {
+        getChannel();
+
+        Publisher[] stripes = publishers;
+        Publisher publisher = stripes[stripe];
+
+        if(!publisher.isOpen()) {
+            synchronized (stripes) {
+                publisher = stripes[stripe];
+                if(!publisher.isOpen()) {
+                    publisher = stripes[stripe] = new Publisher(connection.createChannel(), exchange, inFlight, metrics);
+                }
+            }
+        }
+        return publisher;
+    }
+
+    /**
+     * Message properties of a publish, stamped with the publish time for the end-to-end latency metrics and with the
+     * origin when the events are also delivered locally. The content encoding is set for compressed bodies.
+     */
+    private BasicProperties properties(long publishedAt, String contentEncoding, LocalEmit local) {
+        Map<String, Object> headers;
+        if(local != null) {
+            headers = new HashMap<>(4);
+            headers.put(Metrics.PUBLISHED_HEADER, publishedAt);
+            headers.put(ORIGIN_HEADER, local.stamp);
+        } else {
+            headers = Collections.singletonMap(Metrics.PUBLISHED_HEADER, publishedAt);
+        }
+
+        return new BasicProperties.Builder()
+                .contentType(codec.getContentType())
+                .contentEncoding(contentEncoding)
+                .headers(headers)
+                .build();
+    }
+
+    /**
+     * Message properties of a journaled event, as they were when the event was emitted.
+     */
+    private static BasicProperties properties(OutboundJournal.Record record) {
+        Map<String, Object> headers = new HashMap<>(4);
+        headers.put(Metrics.PUBLISHED_HEADER, record.publishedAt);
+        if(record.origin != null) {
+            headers.put(ORIGIN_HEADER, record.origin);
+        }
+
+        return new BasicProperties.Builder()
+                .contentType(record.contentType)
+                .contentEncoding(record.contentEncoding)
+                .headers(headers)
+                .build();
+    }
+
+    /**
+     * Append the event to the journal if the broker is unreachable or the journal is still being replayed.
+     *
+     * @return Position of the event in the journal, or -1 if the event is to be published through the outbound queue.
+     */
+    private long journal(Event event, long publishedAt, byte[] body, String contentEncoding, LocalEmit local) throws IOException {
+        if(journal == null) {
+            return -1;
         }
+
+        if(!isConnected()) {
+            journal.activate();
+            connect();
+        }
+        return journal.appendIfActive(new OutboundJournal.Record(
+            event.routingKey(),
+            codec.getContentType(),
+            contentEncoding,
+            local != null ? local.stamp : null,
+            publishedAt,
+            body
+        ));
     }
 
+    /**
+     * Queue the event for publishing, or journal it while the broker is unreachable.
+     *
+     * @throws RejectedExecutionException If the outbound queue is full and its overflow policy rejects the event.
+     */
     @Override
     public void emit(Event event) {
+        metrics.emitted(event.name);
+        long publishedAt = System.currentTimeMillis();
+        LocalEmit local = prepareLocal(event.routingKey());
+        try {
+            byte[] body = codec.encode(event);
+            byte[] compressed = compress(body);
+            String contentEncoding = compressed != null ? getContentEncoding() : null;
+            body = compressed != null ? compressed : body;
+
+            if(journal(event, publishedAt, body, contentEncoding, local) < 0) {
+                outbound.offer(new OutboundQueue.Pending(event.routingKey(), properties(publishedAt, contentEncoding, local), body, event, null));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        deliverLocally(local, event, publishedAt);
+    }
+
+    /**
+     * Queue the event for publishing, the returned future fails if the outbound queue rejects the event. Journaled
+     * events complete the future once replayed and confirmed.
+     */
+    @Override
+    public CompletableFuture<Event> emitAsync(Event event) {
+        metrics.emitted(event.name);
+        long publishedAt = System.currentTimeMillis();
+        CompletableFuture<Event> confirmed = new CompletableFuture<>();
+        LocalEmit local = prepareLocal(event.routingKey());
+        try {
+            byte[] body = codec.encode(event);
+            byte[] compressed = compress(body);
+            String contentEncoding = compressed != null ? getContentEncoding() : null;
+            body = compressed != null ? compressed : body;
+
+            long position = journal(event, publishedAt, body, contentEncoding, local);
+            if(position >= 0) {
+                journalWaiters.put(position, () -> confirmed.complete(event));
+            } else {
+                outbound.offer(new OutboundQueue.Pending(event.routingKey(), properties(publishedAt, contentEncoding, local), body, event, confirmed));
+            }
+        } catch (IOException e) {
+            confirmed.completeExceptionally(e);
+        } catch (RejectedExecutionException e) {
+            // The event is not published, so the local listeners do not get it either, same as with emit.
+            confirmed.completeExceptionally(e);
+            return confirmed;
+        }
+        deliverLocally(local, event, publishedAt);
+        return confirmed;
+    }
+
+    /**
+     * Publish a queued event, on the sender thread of the lane.
+     */
+    private void send(int lane, OutboundQueue.Pending pending) {
         try {
-            getChannel().basicPublish(exchange, event.correlationBlock + "." + event.name, props, event.toString().getBytes());
+            Publisher publisher = getPublisher(lane);
+            if(pending.confirmed == null) {
+                publisher.publish(pending.routingKey, pending.props, pending.body);
+            } else {
+                publisher.publishAsync(pending.routingKey, pending.props, pending.body, pending.event)
+                    .whenComplete((event, e) -> {
+                        if(e != null) {
+                            pending.confirmed.completeExceptionally(e);
+                        } else {
+                            pending.confirmed.complete(event);
+                        }
+                    });
+            }
         } catch (IOException e) {
+            if(pending.confirmed != null) {
+                pending.confirmed.completeExceptionally(e);
+            }
             e.printStackTrace();
         }
     }
 
     @Override
-    public String registerListener(String routingKey, String queueName, Consumer<JsonNode> callback) {
+    public String registerListener(String routingKey, String queueName, ListenerOptions options, Consumer<Delivery> callback) {
         Listener listener = new Listener()
             .setRoutingKey(routingKey)
             .setQueueName(queueName)
-            .setCallback(callback);
+            .setOptions(options)
+            .setCallback(callback)
+            .setInvoker(new HandlerInvoker(callback, options, metrics));
 
-        registerListenerRaw(listener);
+        return register(listener);
+    }
+
+    @Override
+    public String registerBatchListener(String routingKey, String queueName, ListenerOptions options, int maxSize, long maxWaitMSec, Consumer<List<Delivery>> callback) {
+        Listener listener = new Listener()
+            .setRoutingKey(routingKey)
+            .setQueueName(queueName)
+            .setOptions(options);
+        // A full batch fills the acknowledgement batch by itself, a partial one is flushed once handled.
+        listener.setInvoker(new BatchInvoker(callback, options, maxSize, maxWaitMSec, getTimer(), () -> flushAcks(listener), metrics));
+
+        return register(listener);
+    }
+
+    private String register(Listener listener) {
+        // Listeners in the map are restored by a reconnect, which may be in progress.
         listeners.put(listener.getId(), listener);
+        getChannel();
+        registerListenerRaw(listener);
+        registerLocal(listener);
 
         return listener.getId();
     }
 
+    /**
+     * Start consuming on a channel of the listener's own, so the prefetch and the multiple acknowledgements only
+     * apply to the deliveries of this listener.
+     *
+     * <p>The queue declare and bind are pipelined without waiting for the replies, the consume is synchronous and
+     * fails if either of them did. Once it succeeds the queue and binding are cached and further listeners of the same
+     * queue skip declaring them.</p>
+     *
+     * <p>Does nothing if the listener is already consuming on the current connection.</p>
+     */
     private void registerListenerRaw(Listener listener) {
-        Channel channel = getChannel();
+        synchronized (listener) {
+            if(listener.getChannel() != null && listener.getChannel().isOpen()) {
+                return;
+            }
+            registerListenerOnConnection(listener);
+        }
+    }
+
+    private void registerListenerOnConnection(Listener listener) {
         try {
-            String queue = getQueue(listener.getQueueName());
-            channel.queueBind(queue, exchange, listener.getRoutingKey());
-            listener.setCTag(channel.basicConsume(queue, false, createConsumer(listener.getCallback())));
+            ListenerOptions options = listener.getOptions();
+            int listenerPrefetch = options.getPrefetch() > 0 ? options.getPrefetch() : prefetch;
+            int batchSize = options.getAckBatchSize() > 0 ? options.getAckBatchSize() : ackBatchSize;
+            long interval = options.getAckIntervalMSec() > 0 ? options.getAckIntervalMSec() : ackInterval;
+
+            int handlerBatch = listener.getInvoker().getBatchSize();
+            if(handlerBatch > 1) {
+                // Room for the next batch to fill while the current one is handled.
+                if(listenerPrefetch > 0) {
+                    listenerPrefetch = Math.max(listenerPrefetch, 2 * handlerBatch);
+                }
+                batchSize = handlerBatch;
+            }
+
+            Channel channel = connection.createChannel();
+            if(listenerPrefetch > 0) {
+                channel.basicQos(listenerPrefetch);
+            }
+
+            String queue = declareQueue(channel, listener.getQueueName());
+            if(!declared.hasBinding(queue, listener.getRoutingKey())) {
+                channel.queueBindNoWait(queue, exchange, listener.getRoutingKey(), null);
+            }
+
+            listener
+                .setChannel(channel)
+                .setAcks(new AckBatcher(channel, batchSize, interval, getTimer(), metrics));
+            listener.setCTag(channel.basicConsume(queue, false, createConsumer(channel, listener)));
+
+            if(listener.getQueueName() != null) {
+                declared.queueDeclared(queue);
+                declared.bindingDeclared(queue, listener.getRoutingKey());
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private String getQueue(String queueName) throws IOException {
-        Channel channel = getChannel();
-        AMQP.Queue.DeclareOk queueOk;
+    /**
+     * Declare the queue without waiting for the reply.
+     *
+     * <p>Non-shared listeners get an exclusive auto-delete queue like the server named ones, but named by the client,
+     * so the name is known without a round trip.</p>
+     */
+    private String declareQueue(Channel channel, String queueName) throws IOException {
         if(queueName != null){
-            boolean durable = engraved;
-            boolean autoDelete = !engraved;
-            queueOk = channel.queueDeclare(queueName, durable, false, autoDelete, null);
+            if(!declared.hasQueue(queueName)) {
+                boolean durable = engraved;
+                boolean autoDelete = !engraved;
+                channel.queueDeclareNoWait(queueName, durable, false, autoDelete, null);
+            }
+            return queueName;
         } else {
-            queueOk = channel.queueDeclare();
+            String name = "esticade.gen-" + UUID.randomUUID();
+            channel.queueDeclareNoWait(name, false, true, true, null);
+            return name;
         }
-        return queueOk.getQueue();
     }
 
     @Override
     protected void terminate() {
+        outbound.close(OUTBOUND_CLOSE_SEC, TimeUnit.SECONDS);
         channelRetryEnabled = false;
+        reconnector.shutdownNow();
+        replayer.shutdownNow();
+        listeners.values().forEach(this::flushAcks);
         try {
-            connection.close();
+            if(connection != null) {
+                connection.close();
+            }
             connection = null;
         } catch (IOException e) {
             e.printStackTrace();
@@ -167,24 +624,64 @@ class RabbitMQ extends Connector implements ShutdownListener {
     public void deleteListener(String tag) {
         Listener listener = listeners.remove(tag);
         deleteListenerRaw(listener);
+        if(listener != null) {
+            deleteLocal(listener);
+        }
+
+        if(listener != null && listener.getQueueName() != null && !engraved && !isConsumed(listener.getQueueName())) {
+            // The auto-delete queue goes away with its last consumer.
+            declared.queueDeleted(listener.getQueueName());
+        }
+    }
+
+    private boolean isConsumed(String queueName) {
+        return listeners.values().stream().anyMatch(listener -> queueName.equals(listener.getQueueName()));
     }
 
     private void deleteListenerRaw(Listener listener) {
-        Channel channel = getChannel();
+        if(listener == null || listener.getChannel() == null) {
+            return;
+        }
+
+        Channel channel = listener.getChannel();
         try {
             channel.basicCancel(listener.getCtag());
+            listener.getAcks().flush();
+            channel.close();
+        } catch (IOException | TimeoutException | ShutdownSignalException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushAcks(Listener listener) {
+        try {
+            if(listener.getAcks() != null) {
+                listener.getAcks().flush();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Cancel the consumers but keep their channels open, so the handlers still running can acknowledge their events.
+     */
     @Override
-    public boolean isPending() {
-        return pending > 0;
+    protected void stopConsuming() {
+        listeners.values().forEach(listener -> {
+            try {
+                if(listener.getChannel() != null && listener.getChannel().isOpen()) {
+                    listener.getChannel().basicCancel(listener.getCtag());
+                }
+            } catch (IOException | ShutdownSignalException e) {
+                e.printStackTrace();
+            }
+        });
     }
 
-    private DefaultConsumer createConsumer(final Consumer<JsonNode> callback) {
-        Channel channel = getChannel();
+    private DefaultConsumer createConsumer(final Channel channel, final Listener listener) {
+        final HandlerInvoker invoker = listener.getInvoker();
+        final AckBatcher acks = listener.getAcks();
 
         return new DefaultConsumer(channel) {
             @Override
@@ -196,20 +693,48 @@ class RabbitMQ extends Connector implements ShutdownListener {
             {
                 long deliveryTag = envelope.getDeliveryTag();
 
-                JsonNode obj = mapper.readTree(body);
-                pending++;
-                callback.accept(obj);
-                pending--;
-                channel.basicAck(deliveryTag, false);
+                if(listener.isLocal() && isLocalCopy(listener, header(properties, ORIGIN_HEADER))) {
+                    acks.ackQuietly(deliveryTag);
+                    return;
+                }
+
+                Delivery delivery = new Delivery(
+                    body,
+                    EventCodecs.forContentType(properties.getContentType()),
+                    properties.getContentEncoding(),
+                    maxDecompressedSize,
+                    envelope.getRoutingKey(),
+                    publishedAt(properties),
+                    envelope.isRedeliver()
+                );
+                inFlight.enter();
+                invoker.invoke(delivery, () -> {
+                    acks.ackQuietly(deliveryTag);
+                    inFlight.exit();
+                });
             }
         };
     }
 
+    private static long publishedAt(BasicProperties properties) {
+        Object publishedAt = header(properties, Metrics.PUBLISHED_HEADER);
+        return publishedAt instanceof Number ? ((Number) publishedAt).longValue() : 0;
+    }
+
+    private static Object header(BasicProperties properties, String name) {
+        return properties.getHeaders() != null ? properties.getHeaders().get(name) : null;
+    }
+
     @Override
     public void shutdownCompleted(ShutdownSignalException e) {
         if(channelRetryEnabled){
+            metrics.connectionLost();
             System.out.println("Shutdown called...");
-            getChannel();
+            if(journal != null) {
+                journal.activate();
+            }
+            // Reconnect on a thread of our own, this is called on the thread of the connection.
+            connect();
         }
     }
 }
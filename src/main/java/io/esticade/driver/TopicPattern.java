@@ -0,0 +1,90 @@
+package io.esticade.driver;
+
+/**
+ * Precompiled AMQP topic exchange binding key.
+ *
+ * <p>Matches routing keys the same way RabbitMQ topic exchange does: words are separated by dots, <code>*</code>
+ * substitutes exactly one word and <code>#</code> substitutes zero or more words. The key is matched in place, no
+ * intermediate strings are created.</p>
+ */
+final class TopicPattern {
+    private static final String ONE_WORD = "*";
+    private static final String ANY_WORDS = "#";
+
+    private final String pattern;
+    private final String[] words;
+
+    private TopicPattern(String pattern) {
+        this.pattern = pattern;
+        this.words = pattern.split("\\.", -1);
+    }
+
+    static TopicPattern compile(String pattern) {
+        return new TopicPattern(pattern);
+    }
+
+    String getPattern() {
+        return pattern;
+    }
+
+    boolean matches(String routingKey) {
+        return matches(routingKey, 0, 0);
+    }
+
+    /**
+     * @param key Routing key
+     * @param word Index of the pattern word to match next
+     * @param pos Start of the next word in the key, past the end of the key once all words are consumed
+     */
+    private boolean matches(String key, int word, int pos) {
+        int length = key.length();
+
+        while (word < words.length) {
+            String expected = words[word];
+
+            if (expected.equals(ANY_WORDS)) {
+                if (word == words.length - 1) {
+                    return true;
+                }
+                while (pos <= length) {
+                    if (matches(key, word + 1, pos)) {
+                        return true;
+                    }
+                    pos = nextWord(key, pos);
+                }
+                return matches(key, word + 1, pos);
+            }
+
+            if (pos > length) {
+                return false;
+            }
+
+            int end = key.indexOf('.', pos);
+            if (end < 0) {
+                end = length;
+            }
+
+            if (!expected.equals(ONE_WORD)) {
+                int size = end - pos;
+                if (size != expected.length() || !key.regionMatches(pos, expected, 0, size)) {
+                    return false;
+                }
+            }
+
+            pos = end + 1;
+            word++;
+        }
+
+        return pos > length;
+    }
+
+    private static int nextWord(String key, int pos) {
+        int end = key.indexOf('.', pos);
+        return end < 0 ? key.length() + 1 : end + 1;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -7,6 +7,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -14,7 +17,9 @@ import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class EventChainTest {
     Service service;
@@ -116,6 +121,17 @@ public class EventChainTest {
         assertTrue("The timeout callback should have been called", timeoutCallbackCalled[0]);
     }
 
+    @Test
+    public void testTimeoutCallbackDoesNotRunOnTheTimer() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<String> callbackThread = new CompletableFuture<>();
+
+        service.emitChain("UnansweredChainTest")
+                .timeout(100, event -> callbackThread.complete(Thread.currentThread().getName()))
+                .execute();
+
+        assertNotEquals("esticade-timer", callbackThread.get(1, TimeUnit.SECONDS));
+    }
+
     @Test
     public void testEventEmitChainSupportsDifferentTypes() throws ExecutionException, InterruptedException, TimeoutException {
         CompletableFuture<Event> stringOk = new CompletableFuture<>();
@@ -142,4 +158,117 @@ public class EventChainTest {
         assertEquals(true, boolOk.get(1, TimeUnit.SECONDS).body);
         assertEquals(null, nullOk.get(1, TimeUnit.SECONDS).body);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRequestCompletesWithResponseBody() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        Service service2 = new Service("Service 2");
+        service2.on("RequestTest", ev -> ev.emit("RequestTest-Response", new TestBean((int)ev.body, 1.5, "Response")));
+
+        TestBean response = service.request("RequestTest", 42, "RequestTest-Response", TestBean.class)
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals(new TestBean(42, 1.5, "Response"), response);
+    }
+
+    @Test
+    public void testRequestTimesOut() throws InterruptedException {
+        CompletableFuture<Integer> response = service.request("UnansweredRequestTest", null, "UnansweredRequestTest-Response", Integer.class, 100);
+
+        try {
+            response.get(1, TimeUnit.SECONDS);
+            fail("The request should time out");
+        } catch (ExecutionException e) {
+            assertTrue("The request should fail with TimeoutException", e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            fail("The request should have been completed by its own timeout");
+        }
+    }
+
+    @Test
+    public void testTimedOutRequestIsNotCompletedOnTheTimer() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<String> requestThread = new CompletableFuture<>();
+        CompletableFuture<String> gatherThread = new CompletableFuture<>();
+
+        service.request("UnansweredRequestTest", null, "UnansweredRequestTest-Response", Integer.class, 100)
+                .whenComplete((result, error) -> requestThread.complete(Thread.currentThread().getName()));
+        service.gather("UnansweredGatherTest", null, "UnansweredGatherTest-Response", Integer.class, 1, 100)
+                .whenComplete((result, error) -> gatherThread.complete(Thread.currentThread().getName()));
+
+        assertNotEquals("esticade-timer", requestThread.get(1, TimeUnit.SECONDS));
+        assertNotEquals("esticade-timer", gatherThread.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testGatherCollectsResponses() throws InterruptedException, ExecutionException, TimeoutException {
+        service.on("GatherTest", ev -> {
+            ev.emit("GatherTest-Response", 1);
+            ev.emit("GatherTest-Response", 2);
+            ev.emit("GatherTest-Response", 3);
+        });
+
+        List<Integer> responses = service.gather("GatherTest", null, "GatherTest-Response", Integer.class, 2)
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(1, 2), responses);
+    }
+
+    @Test
+    public void testGatherCompletesWithPartialResponsesOnTimeout() throws InterruptedException, ExecutionException, TimeoutException {
+        service.on("PartialGatherTest", ev -> ev.emit("PartialGatherTest-Response", 1));
+
+        List<Integer> responses = service.gather("PartialGatherTest", null, "PartialGatherTest-Response", Integer.class, 3, 200)
+                .get(1, TimeUnit.SECONDS);
+
+        assertEquals(Collections.singletonList(1), responses);
+    }
+
+    @Test
+    public void testChainProfilerRejectsUnusableCapacities() {
+        for (int capacity : new int[] {0, -1, ChainProfiler.MAX_CAPACITY + 1}) {
+            try {
+                service.enableChainProfiler(capacity);
+                fail("Capacity " + capacity + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testReceivedEventKeepsItsCauseAndIsProfiled() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        CompletableFuture<Event> request = new CompletableFuture<>();
+        CompletableFuture<Event> response = new CompletableFuture<>();
+        ChainProfiler profiler = service.enableChainProfiler(16);
+
+        Service service2 = new Service("Service 2");
+        service2.on("ProfiledChainTest", ev -> {
+            request.complete(ev);
+            ev.emit("ProfiledChainTest-Response");
+        });
+
+        service.emitChain("ProfiledChainTest")
+                .on("ProfiledChainTest-Response", response::complete)
+                .execute();
+
+        Event received = response.get(1, TimeUnit.SECONDS);
+        assertEquals("Service 2", received.service);
+        assertEquals(request.get().eventId, received.parentId);
+
+        // The hop is recorded once the handler has returned.
+        ChainProfiler.Chain chain = null;
+        for (int i = 0; i < 20 && (chain == null || chain.getHops().size() < 2); i++) {
+            Thread.sleep(50);
+            chain = profiler.slowestChains(10).get(0);
+        }
+        assertEquals(received.correlationId, chain.getCorrelationId());
+        assertEquals("Both the initiating event and the response pass the chain", 2, chain.getHops().size());
+
+        ChainProfiler.Hop hop = chain.getHops().stream()
+                .filter(candidate -> candidate.getEventId().equals(received.eventId))
+                .findFirst()
+                .get();
+        assertEquals("ProfiledChainTest-Response", hop.getName());
+        assertEquals("Service 2", hop.getService());
+        assertEquals(received.parentId, hop.getParentId());
+        assertTrue("The dump should list the hop", profiler.dumpSlowestChains(10).contains(received.eventId));
+    }
+}
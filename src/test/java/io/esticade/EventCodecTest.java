@@ -0,0 +1,69 @@
+package io.esticade;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.esticade.driver.EventCodec;
+import io.esticade.driver.EventCodecs;
+import io.esticade.driver.EventEnvelope;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EventCodecTest {
+    private final ServiceParams params = new ServiceParams("CodecTestService");
+
+    @Test
+    public void testJsonRoundTrip() throws IOException {
+        assertRoundTrip(EventCodecs.JSON);
+    }
+
+    @Test
+    public void testSmileRoundTrip() throws IOException {
+        assertRoundTrip(EventCodecs.SMILE);
+    }
+
+    @Test
+    public void testCborRoundTrip() throws IOException {
+        assertRoundTrip(EventCodecs.CBOR);
+    }
+
+    @Test
+    public void testDecoderIsSelectedByContentType() {
+        assertSame(EventCodecs.SMILE, EventCodecs.forContentType(EventCodecs.SMILE.getContentType()));
+        assertSame(EventCodecs.CBOR, EventCodecs.forContentType(EventCodecs.CBOR.getContentType()));
+        assertSame(EventCodecs.JSON, EventCodecs.forContentType("application/json; charset=utf-8"));
+        assertSame("Messages without content type are sent by other clients as JSON", EventCodecs.JSON, EventCodecs.forContentType(null));
+        assertSame(EventCodecs.CBOR, EventCodecs.forName("CBOR"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodecIsRejected() {
+        EventCodecs.forName("xml");
+    }
+
+    private void assertRoundTrip(EventCodec codec) throws IOException {
+        TestBean bean = new TestBean(123, 45.63, "Test");
+        Event sent = new Event(params, "CodecTest", bean);
+
+        JsonNode tree = codec.decode(codec.encode(sent));
+        Event received = new Event(params, tree);
+
+        assertEquals(sent.eventId, received.eventId);
+        assertEquals(sent.correlationId, received.correlationId);
+        assertEquals(sent.correlationBlock, received.correlationBlock);
+        assertEquals(sent.name, received.name);
+        assertEquals(sent.service, received.service);
+        assertEquals(sent.parentId, received.parentId);
+        assertEquals(bean, received.bodyAs(TestBean.class));
+
+        EventEnvelope envelope = codec.decode(codec.encode(sent), Event.readerFor(TestBean.class));
+        assertEquals(sent.eventId, envelope.eventId);
+        assertEquals(sent.correlationId, envelope.correlationId);
+        assertEquals(sent.correlationBlock, envelope.correlationBlock);
+        assertEquals(sent.service, envelope.service);
+        assertEquals(sent.name, envelope.name);
+        assertEquals(bean, envelope.body);
+    }
+}
@@ -0,0 +1,52 @@
+package io.esticade;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashRingTest {
+    private static final int KEYS = 10000;
+
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        HashRing ring = new HashRing(Arrays.asList("a", "b", "c", "d"), PartitionedListener.VIRTUAL_NODES);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.owner("key-" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Every member should get roughly a quarter of the keys, got " + count, count > KEYS / 8 && count < KEYS / 2);
+        }
+    }
+
+    @Test
+    public void testOnlyKeysOfTheNewMemberMove() {
+        HashRing before = new HashRing(Arrays.asList("a", "b", "c"), PartitionedListener.VIRTUAL_NODES);
+        HashRing after = new HashRing(Arrays.asList("c", "b", "a", "d"), PartitionedListener.VIRTUAL_NODES);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = after.owner("key-" + i);
+            if(!owner.equals(before.owner("key-" + i))) {
+                assertEquals("Keys only move to the new member", "d", owner);
+                moved++;
+            }
+        }
+        assertTrue("Roughly a quarter of the keys should move, moved " + moved, moved > KEYS / 8 && moved < KEYS / 2);
+    }
+
+    @Test
+    public void testEmptyRingHasNoOwners() {
+        assertNull(new HashRing(Collections.emptyList(), PartitionedListener.VIRTUAL_NODES).owner("key"));
+    }
+}
@@ -0,0 +1,45 @@
+package io.esticade;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdGeneratorsTest {
+    @Test
+    public void testTimeOrderedIdsAreVersion7Uuids() {
+        long before = System.currentTimeMillis();
+        UUID id = UUID.fromString(IdGenerators.timeOrdered().nextId());
+        long after = System.currentTimeMillis();
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+
+        long millis = id.getMostSignificantBits() >>> 16;
+        assertTrue("The ID should start with the time it was created", millis >= before && millis <= after);
+    }
+
+    @Test
+    public void testTimeOrderedIdsAreUniqueAndSortByTime() throws InterruptedException {
+        IdGenerator generator = IdGenerators.timeOrdered();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue("IDs should be unique", ids.add(generator.nextId()));
+        }
+
+        String earlier = generator.nextId();
+        Thread.sleep(2);
+        String later = generator.nextId();
+        assertTrue("IDs of later milliseconds should sort after the earlier ones", earlier.compareTo(later) < 0);
+    }
+
+    @Test
+    public void testFormatMatchesUuid() {
+        UUID uuid = UUID.randomUUID();
+        assertEquals(uuid.toString(), IdGenerators.TimeOrdered.format(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+    }
+}
@@ -0,0 +1,116 @@
+package io.esticade;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs with local delivery enabled, in an execution of its own.
+ */
+public class LocalDeliveryTest {
+    private static final int EVENTS = 2000;
+
+    Service service;
+
+    @Before
+    public void init() throws IOException {
+        service = new Service("LocalDeliveryService");
+    }
+
+    @After
+    public void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    public void testAlwaysOnGetsEveryEventOnce() throws InterruptedException {
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger(-1);
+
+        Thread emitter = new Thread(() -> {
+            for (int i = 0; i < EVENTS; i++) {
+                sent.set(i);
+                service.emit("LocalEvent", i);
+            }
+        });
+        emitter.start();
+
+        // Register while emitting, the events emitted around the registration come either locally or from the broker.
+        while (sent.get() < EVENTS / 4) {
+            Thread.yield();
+        }
+        service.alwaysOn("LocalEvent", event -> {
+            if(!received.add(event.bodyAs(Integer.class))) {
+                duplicates.incrementAndGet();
+            }
+        });
+        int first = sent.get() + 1;
+        emitter.join();
+
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!received.contains(EVENTS - 1) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+
+        assertEquals("No event should be delivered twice", 0, duplicates.get());
+        for (int i = first; i < EVENTS; i++) {
+            assertTrue("Event " + i + " emitted after registering was not delivered", received.contains(i));
+        }
+    }
+
+    @Test
+    public void testBodyOfTheExpectedTypeIsHandedOver() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Object> received = new CompletableFuture<>();
+        ObjectNode body = JsonNodeFactory.instance.objectNode().put("number", 123);
+
+        service.alwaysOn("HandedOverEvent", event -> received.complete(event.body));
+        service.emit("HandedOverEvent", body);
+
+        assertSame("A tree body should reach the local listener without being converted", body, received.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSharedListenersAreServedByTheBroker() throws InterruptedException {
+        CountDownLatch shared = new CountDownLatch(10);
+        CountDownLatch always = new CountDownLatch(10);
+        AtomicInteger sharedCount = new AtomicInteger();
+        AtomicInteger alwaysCount = new AtomicInteger();
+
+        service.on("SharedEvent", event -> {
+            sharedCount.incrementAndGet();
+            shared.countDown();
+        });
+        service.alwaysOn("SharedEvent", event -> {
+            alwaysCount.incrementAndGet();
+            always.countDown();
+        });
+
+        for (int i = 0; i < 10; i++) {
+            service.emit("SharedEvent", i);
+        }
+
+        assertTrue(shared.await(20, TimeUnit.SECONDS));
+        assertTrue(always.await(20, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(10, sharedCount.get());
+        assertEquals(10, alwaysCount.get());
+    }
+}
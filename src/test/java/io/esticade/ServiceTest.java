@@ -1,6 +1,7 @@
 package io.esticade;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.esticade.driver.Metrics;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -8,7 +9,11 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class ServiceTest{
@@ -75,6 +80,107 @@ public class ServiceTest{
         assertEquals(testObject, event.body);
     }
 
+    @Test
+    public void testEmitAsync() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Event> received = new CompletableFuture<>();
+
+        service.on("EmitAsyncTest", received::complete);
+
+        Event confirmed = service.emitAsync("EmitAsyncTest", 123).get(2, TimeUnit.SECONDS);
+        Event event = received.get(2, TimeUnit.SECONDS);
+
+        assertEquals("Confirmed event should be the one received", confirmed.eventId, event.eventId);
+        assertEquals(123, event.body);
+    }
+
+    @Test
+    public void testHandlerExecutor() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<String> handlerThread = new CompletableFuture<>();
+        ExecutorService executor = HandlerExecutors.fixed(2);
+        ListenerOptions options = new ListenerOptions()
+            .executor(executor)
+            .orderedByCorrelation();
+
+        try {
+            service.on("ExecutorTest", options, ev -> handlerThread.complete(Thread.currentThread().getName()));
+            service.emit("ExecutorTest");
+
+            assertTrue("Handler should run on the given executor", handlerThread.get(2, TimeUnit.SECONDS).startsWith("esticade-handler-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedEventsAreDone() throws InterruptedException {
+        ExecutorService executor = HandlerExecutors.fixed(1);
+        executor.shutdown();
+        AtomicInteger handled = new AtomicInteger();
+
+        service.on("RejectedTest", new ListenerOptions().executor(executor), ev -> handled.incrementAndGet());
+        service.on("RejectedOrderedTest", new ListenerOptions().executor(executor).orderedByCorrelation(), ev -> handled.incrementAndGet());
+        service.emit("RejectedTest");
+        service.emit("RejectedOrderedTest");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (rejected("RejectedTest") + rejected("RejectedOrderedTest") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, rejected("RejectedTest"));
+        assertEquals(1, rejected("RejectedOrderedTest"));
+        assertEquals(0, handled.get());
+        assertTrue("Rejected events should not stay in flight", service.shutdown(Duration.ofSeconds(2)));
+    }
+
+    @Test
+    public void testOnBatch() throws InterruptedException {
+        BlockingQueue<List<Event>> batches = new LinkedBlockingQueue<>();
+        service.onBatch("BatchTest", 3, Duration.ofMillis(200), batches::add);
+
+        for (int i = 0; i < 4; i++) {
+            service.emit("BatchTest", i);
+        }
+
+        List<Event> full = batches.poll(2, TimeUnit.SECONDS);
+        assertEquals("Full batch is handled without waiting", 3, full.size());
+        assertEquals(0, full.get(0).body);
+        assertEquals(2, full.get(2).body);
+
+        List<Event> partial = batches.poll(2, TimeUnit.SECONDS);
+        assertEquals("Rest is handled once the wait has passed", 1, partial.size());
+        assertEquals(3, partial.get(0).body);
+    }
+
+    @Test
+    public void testOnPartitioned() throws IOException, InterruptedException {
+        Service service2 = new Service("TestService");
+        ConcurrentMap<String, Set<String>> instancesByKey = new ConcurrentHashMap<>();
+        CountDownLatch handled = new CountDownLatch(80);
+
+        service.onPartitioned("PartitionTest", ev -> ev.body.toString(), ev -> {
+            instancesByKey.computeIfAbsent(ev.body.toString(), key -> ConcurrentHashMap.newKeySet()).add("service1");
+            handled.countDown();
+        });
+        service2.onPartitioned("PartitionTest", ev -> ev.body.toString(), ev -> {
+            instancesByKey.computeIfAbsent(ev.body.toString(), key -> ConcurrentHashMap.newKeySet()).add("service2");
+            handled.countDown();
+        });
+        // The membership heartbeats go through the event network as well.
+        Thread.sleep(200);
+
+        for (int i = 0; i < 80; i++) {
+            service.emit("PartitionTest", "key-" + (i % 40));
+        }
+
+        assertTrue(handled.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(40, instancesByKey.size());
+        instancesByKey.values().forEach(instances -> assertEquals("Key should stay on one instance", 1, instances.size()));
+        assertEquals("Keys should be divided between the instances", 2,
+            instancesByKey.values().stream().flatMap(Set::stream).distinct().count());
+    }
+
     @Test
     public void testStringEmit() throws InterruptedException, ExecutionException, TimeoutException {
         Event ev = withListener("EmitString", (eventName) -> service.emit(eventName, "Test String"));
@@ -221,11 +327,100 @@ public class ServiceTest{
         assertEquals("Received bean should be equal to the one sent", bean, receivedBean);
     }
 
+    @Test
+    public void testDeduplicateSkipsRepeatedEventId() throws InterruptedException {
+        AtomicInteger handled = new AtomicInteger();
+        service.on("DedupTest", new ListenerOptions().deduplicate(60000, 1000), ev -> handled.incrementAndGet());
+
+        // Same event ID for both emits, as when an event is published again after a lost confirm.
+        service.setIdGenerator(() -> "repeated-event-id");
+        service.emit("DedupTest");
+        service.emit("DedupTest");
+
+        Metrics.EventMetrics metrics = service.getMetrics().getEvent("DedupTest");
+        long deadline = System.currentTimeMillis() + 2000;
+        while ((metrics == null || metrics.getReceived() < 2) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            metrics = service.getMetrics().getEvent("DedupTest");
+        }
+
+        assertTrue("The duplicate should be acknowledged", service.shutdown(Duration.ofSeconds(2)));
+        assertEquals("The handler should run once", 1, handled.get());
+        assertEquals(2, metrics.getReceived());
+        assertEquals(1, metrics.getDuplicates());
+    }
+
+    @Test
+    public void testTypedOn() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<TestBean> future = new CompletableFuture<>();
+        TestBean bean = new TestBean(123, 45.63, "Test");
+
+        service.on("TypedTestEvent", TestBean.class, (event, body) -> {
+            assertEquals("TypedTestEvent", event.name);
+            assertEquals(body, event.bodyAs(TestBean.class));
+            future.complete(body);
+        });
+
+        service.emit("TypedTestEvent", bean);
+
+        assertEquals(bean, future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMetricsCountEventsAndTimeHandlers() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Event> future = new CompletableFuture<>();
+        service.on("MetricsTestEvent", event -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            future.complete(event);
+        });
+
+        service.emit("MetricsTestEvent", 1);
+        future.get(1, TimeUnit.SECONDS);
+        Thread.sleep(50);
+
+        Metrics.EventMetrics metrics = service.getMetrics().getEvent("MetricsTestEvent");
+        assertEquals(1, metrics.getEmitted());
+        assertEquals(1, metrics.getReceived());
+        assertEquals(1, metrics.getHandlerTime().getCount());
+        assertTrue("Handler time should cover the sleep", metrics.getHandlerTime().getMax() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(1, metrics.getEndToEndLatency().getCount());
+    }
+
+    @Test
+    public void testShutdownDrainsRunningHandlers() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Event> started = new CompletableFuture<>();
+        CompletableFuture<Event> finished = new CompletableFuture<>();
+
+        service.on("DrainTest", event -> {
+            started.complete(event);
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            finished.complete(event);
+        });
+
+        service.emit("DrainTest");
+        started.get(1, TimeUnit.SECONDS);
+
+        assertTrue("Shutdown should drain before the timeout", service.shutdown(Duration.ofSeconds(2)));
+        assertTrue("The running handler should have finished", finished.isDone());
+    }
+
+    private long rejected(String eventName) {
+        Metrics.EventMetrics metrics = service.getMetrics().getEvent(eventName);
+        return metrics != null ? metrics.getRejected() : 0;
+    }
+
     private Event withListener(String eventName, Consumer<String> emit) throws InterruptedException, ExecutionException, TimeoutException {
         CompletableFuture<Event> future = new CompletableFuture<>();
         service.on(eventName, future::complete);
         emit.accept(eventName);
         return future.get(2, TimeUnit.SECONDS);
     }
-
 }
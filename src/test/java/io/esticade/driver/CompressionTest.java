@@ -0,0 +1,96 @@
+package io.esticade.driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompressionTest {
+    private static final int MAX_LENGTH = 1024 * 1024;
+
+    @Test
+    public void testLz4RoundTrip() throws IOException {
+        assertRoundTrip(Compression.LZ4);
+    }
+
+    @Test
+    public void testDeflateRoundTrip() throws IOException {
+        assertRoundTrip(Compression.DEFLATE);
+    }
+
+    @Test
+    public void testCompressedDeliveryIsDecoded() throws IOException {
+        byte[] body = event(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = Compression.LZ4.compress(body);
+        Delivery delivery = new Delivery(compressed, EventCodecs.JSON, "lz4", MAX_LENGTH, "block.Compressed", 0);
+
+        EventEnvelope envelope = delivery.envelope(new ObjectMapper().readerFor(JsonNode.class));
+
+        assertEquals("Compressed", envelope.name);
+        assertEquals(1000, ((JsonNode) envelope.body).get("text").asText().length());
+    }
+
+    @Test
+    public void testUnencodedBodiesAreLeftAlone() throws IOException {
+        assertNull(Compression.forContentEncoding(null));
+        assertNull(Compression.forContentEncoding("identity"));
+        assertNull(Compression.forName("none"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownContentEncodingFails() throws IOException {
+        Compression.forContentEncoding("br");
+    }
+
+    @Test(expected = IOException.class)
+    public void testLz4LengthAboveMaximumIsRejected() throws IOException {
+        byte[] body = event(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = Compression.LZ4.compress(body);
+        // Claim a 2 GB body, the receiver must not allocate a buffer for it.
+        compressed[0] = 0x7f;
+
+        Compression.LZ4.decompress(compressed, MAX_LENGTH, (buffer, offset, length) -> length);
+    }
+
+    @Test
+    public void testDecompressingAboveMaximumIsRejected() throws IOException {
+        byte[] body = new byte[MAX_LENGTH + 1];
+        for (Compression compression : new Compression[] {Compression.LZ4, Compression.DEFLATE}) {
+            byte[] compressed = compression.compress(body);
+            try {
+                compression.decompress(compressed, MAX_LENGTH, (buffer, offset, length) -> length);
+                fail(compression.getContentEncoding() + " body above the maximum should be rejected");
+            } catch (IOException e) {
+                // Expected
+            }
+            assertEquals(body.length, (int) compression.decompress(compressed, body.length, (buffer, offset, length) -> length));
+        }
+    }
+
+    private static void assertRoundTrip(Compression compression) throws IOException {
+        // Larger than the recycled buffer, so decompressing has to grow it.
+        byte[] body = event(200000).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compression.compress(body);
+        assertTrue("Repetitive body should compress", compressed.length < body.length);
+
+        byte[] decompressed = compression.decompress(compressed, MAX_LENGTH, (buffer, offset, length) -> Arrays.copyOfRange(buffer, offset, offset + length));
+        assertArrayEquals(body, decompressed);
+    }
+
+    private static String event(int textLength) {
+        StringBuilder text = new StringBuilder(textLength);
+        while(text.length() < textLength) {
+            text.append("abcdefghij".charAt(text.length() % 10));
+        }
+        return "{\"eventId\":\"1\",\"name\":\"Compressed\",\"body\":{\"text\":\"" + text + "\"}}";
+    }
+}
@@ -0,0 +1,36 @@
+package io.esticade.driver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeclarationCacheTest {
+    @Test
+    public void testDeletedQueueForgetsItsBindings() {
+        DeclarationCache cache = new DeclarationCache();
+        cache.queueDeclared("Service-Event");
+        cache.bindingDeclared("Service-Event", "*.Event");
+        cache.queueDeclared("Service-Event2");
+        cache.bindingDeclared("Service-Event2", "*.Event2");
+
+        cache.queueDeleted("Service-Event");
+
+        assertFalse(cache.hasQueue("Service-Event"));
+        assertFalse(cache.hasBinding("Service-Event", "*.Event"));
+        assertTrue(cache.hasQueue("Service-Event2"));
+        assertTrue(cache.hasBinding("Service-Event2", "*.Event2"));
+    }
+
+    @Test
+    public void testClearForgetsEverything() {
+        DeclarationCache cache = new DeclarationCache();
+        cache.queueDeclared("Service-Event");
+        cache.bindingDeclared("Service-Event", "*.Event");
+
+        cache.clear();
+
+        assertFalse(cache.hasQueue("Service-Event"));
+        assertFalse(cache.hasBinding("Service-Event", "*.Event"));
+    }
+}
@@ -0,0 +1,56 @@
+package io.esticade.driver;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeduplicationIndexTest {
+    private static final long WINDOW_MSEC = 1000;
+    private static final long GENERATION_NANOS = TimeUnit.MILLISECONDS.toNanos(WINDOW_MSEC) / 2;
+
+    @Test
+    public void testSeenIdIsDuplicate() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW_MSEC, 100);
+
+        assertFalse(index.isDuplicate("event-1", false));
+        assertTrue(index.isDuplicate("event-1", false));
+        assertFalse(index.isDuplicate("event-2", false));
+    }
+
+    @Test
+    public void testIdsAreRememberedExactlyForTheWindow() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW_MSEC, 100);
+        long start = System.nanoTime();
+        long fingerprint = DeduplicationIndex.fingerprint("event-1");
+
+        assertFalse(index.isDuplicate(fingerprint, false, start));
+        assertTrue(index.isDuplicate(fingerprint, false, start + GENERATION_NANOS));
+        assertFalse("Beyond the window only redeliveries are matched", index.isDuplicate(fingerprint, false, start + 3 * GENERATION_NANOS));
+    }
+
+    @Test
+    public void testBloomFilterCatchesLateRedeliveries() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW_MSEC, 100);
+        long start = System.nanoTime();
+        long fingerprint = DeduplicationIndex.fingerprint("event-1");
+
+        assertFalse(index.isDuplicate(fingerprint, false, start));
+        assertTrue(index.isDuplicate(fingerprint, true, start + 2 * GENERATION_NANOS));
+    }
+
+    @Test
+    public void testFullGenerationIsRetiredEarly() {
+        DeduplicationIndex index = new DeduplicationIndex(TimeUnit.HOURS.toMillis(1), 10);
+
+        for (int i = 0; i < 30; i++) {
+            assertFalse(index.isDuplicate("event-" + i, false));
+        }
+
+        assertFalse("Two generations of 10 IDs are kept exactly", index.isDuplicate("event-0", false));
+        assertTrue(index.isDuplicate("event-29", false));
+        assertTrue("Retired IDs are still caught when redelivered", index.isDuplicate("event-5", true));
+    }
+}
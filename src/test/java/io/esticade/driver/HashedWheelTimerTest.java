@@ -0,0 +1,62 @@
+package io.esticade.driver;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 16);
+
+    @After
+    public void stop() {
+        timer.stop();
+    }
+
+    @Test
+    public void testTaskRunsAfterDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // Longer than a full rotation of the wheel
+        timer.schedule(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue("Task should not run before the delay", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        CountDownLatch later = new CountDownLatch(1);
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(fired::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        timer.schedule(later::countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse("Second cancel should have no effect", timeout.cancel());
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    public void testManyTimeouts() throws InterruptedException {
+        int count = 200000;
+        CountDownLatch fired = new CountDownLatch(count / 2);
+
+        for (int i = 0; i < count; i++) {
+            HashedWheelTimer.Timeout timeout = timer.schedule(fired::countDown, i % 100, TimeUnit.MILLISECONDS);
+            if(i % 2 == 1) {
+                timeout.cancel();
+            }
+        }
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,34 @@
+package io.esticade.driver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void testBucketsCoverValuesWithinRelativeError() {
+        for (long value : new long[]{0, 1, 31, 32, 63, 64, 1000, 123456789, Long.MAX_VALUE / 3}) {
+            int bucket = Histogram.bucketOf(value);
+            long highest = Histogram.highestValueOf(bucket);
+
+            assertTrue("Bucket of " + value + " should contain it", highest >= value);
+            assertTrue("Bucket of " + value + " should be narrow", highest - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500.0, histogram.getMean(), 0.001);
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500000, histogram.getValueAtPercentile(50), 500000 / 32);
+        assertEquals(990000, histogram.getValueAtPercentile(99), 990000 / 32);
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+    }
+}
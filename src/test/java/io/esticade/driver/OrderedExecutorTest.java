@@ -0,0 +1,85 @@
+package io.esticade.driver;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedExecutorTest {
+    @Test
+    public void testTasksWithSameKeyRunInOrder() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        OrderedExecutor executor = new OrderedExecutor(pool);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            executor.execute("chain", () -> {
+                if(!running.compareAndSet(false, true)) {
+                    overlapped.set(true);
+                }
+                order.add(task);
+                running.set(false);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertFalse("Tasks with the same key should never run at the same time", overlapped.get());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testTasksWithDifferentKeysRunInParallel() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        OrderedExecutor executor = new OrderedExecutor(pool);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        executor.execute("first", () -> awaitQuietly(bothStarted));
+        executor.execute("second", () -> awaitQuietly(bothStarted));
+
+        assertTrue("Tasks of different keys should not wait for each other", bothStarted.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testRejectedTasksGoToTheHandler() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        List<Runnable> rejected = new ArrayList<>();
+        OrderedExecutor executor = new OrderedExecutor(pool, rejected::add);
+
+        Runnable first = () -> {};
+        Runnable second = () -> {};
+        executor.execute("chain", first);
+        executor.execute("chain", second);
+
+        assertEquals("Every task of the rejected key should be handed over", 2, rejected.size());
+        assertTrue(rejected.get(0) == first && rejected.get(1) == second);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.esticade.driver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplaysInOrderAndDeactivatesOnceCaughtUp() throws IOException {
+        OutboundJournal journal = new OutboundJournal(folder.getRoot(), 1024);
+        assertEquals("Inactive journal does not take events", -1, journal.appendIfActive(record("a")));
+
+        journal.activate();
+        journal.appendIfActive(record("a"));
+        journal.appendIfActive(record("b"));
+
+        OutboundJournal.Record first = journal.next();
+        assertEquals("a", first.routingKey);
+        assertEquals("application/json", first.contentType);
+        assertEquals(1234, first.publishedAt);
+        assertEquals("a", new String(first.body, StandardCharsets.UTF_8));
+        assertEquals("b", journal.next().routingKey);
+        assertNull(journal.next());
+        assertFalse(journal.isActive());
+    }
+
+    @Test
+    public void testConfirmedSegmentsAreDeleted() throws IOException {
+        OutboundJournal journal = new OutboundJournal(folder.getRoot(), 64);
+        journal.activate();
+        for (int i = 0; i < 10; i++) {
+            journal.appendIfActive(record("event-" + i));
+        }
+        assertTrue(segmentFiles() > 1);
+
+        OutboundJournal.Record record;
+        while((record = journal.next()) != null) {
+            journal.confirmed(record);
+        }
+
+        assertEquals(0, journal.size());
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    public void testUnconfirmedRecordsSurviveReopening() throws IOException {
+        OutboundJournal journal = new OutboundJournal(folder.getRoot(), 1024);
+        journal.activate();
+        journal.appendIfActive(record("a"));
+        journal.appendIfActive(record("b"));
+        journal.next();
+
+        OutboundJournal reopened = new OutboundJournal(folder.getRoot(), 1024);
+        assertTrue("Journal left by a previous process is replayed first", reopened.isActive());
+        assertEquals("a", reopened.next().routingKey);
+        assertEquals("b", reopened.next().routingKey);
+        assertNull(reopened.next());
+    }
+
+    @Test
+    public void testRewindReplaysUnconfirmedRecords() throws IOException {
+        OutboundJournal journal = new OutboundJournal(folder.getRoot(), 1024);
+        journal.activate();
+        journal.appendIfActive(record("a"));
+        OutboundJournal.Record stale = journal.next();
+
+        journal.rewind();
+        journal.confirmed(stale);
+        assertEquals("Confirms from before the rewind are ignored", 1, journal.size());
+
+        journal.confirmed(journal.next());
+        assertNull(journal.next());
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    public void testReplayCarriesOnAfterNack() throws IOException, InterruptedException {
+        OutboundJournal journal = new OutboundJournal(folder.getRoot(), 1024);
+        journal.activate();
+        journal.appendIfActive(record("a"));
+        journal.appendIfActive(record("b"));
+
+        List<String> published = new CopyOnWriteArrayList<>();
+        List<Long> confirmed = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Object>> firstRound = new ArrayList<>();
+
+        boolean caughtUp = journal.replay(new OutboundJournal.Replayer() {
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public CompletableFuture<?> publish(OutboundJournal.Record record) {
+                published.add(record.routingKey);
+                CompletableFuture<Object> confirm = new CompletableFuture<>();
+                if(published.size() > 2) {
+                    confirm.complete(null);
+                    return confirm;
+                }
+
+                firstRound.add(confirm);
+                if(firstRound.size() == 2) {
+                    // The confirms of the first round only arrive once the replay has caught up.
+                    new Thread(() -> {
+                        while(journal.isActive()) {
+                            Thread.yield();
+                        }
+                        firstRound.get(0).completeExceptionally(new IOException("Nacked"));
+                        firstRound.get(1).complete(null);
+                    }).start();
+                }
+                return confirm;
+            }
+        }, 10, confirmed::add);
+
+        assertTrue(caughtUp);
+        assertEquals("[a, b, a, b]", published.toString());
+        assertEquals("Every confirm by the broker is reported", 3, confirmed.size());
+        assertFalse(journal.isActive());
+        assertEquals(0, journal.size());
+    }
+
+    private int segmentFiles() {
+        File[] files = folder.getRoot().listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    private static OutboundJournal.Record record(String routingKey) {
+        return new OutboundJournal.Record(routingKey, "application/json", null, null, 1234, routingKey.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,127 @@
+package io.esticade.driver;
+
+import io.esticade.Event;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OutboundQueueTest {
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final InFlight inFlight = new InFlight();
+    private final Metrics metrics = new Metrics();
+    private OutboundQueue queue;
+
+    @After
+    public void tearDown() {
+        if(queue != null) {
+            queue.close(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testPublishesInOrderOnceUnblocked() throws InterruptedException {
+        queue = create(10, OutboundQueue.Overflow.FAIL_FAST);
+        queue.block();
+
+        queue.offer(pending("a", null));
+        queue.offer(pending("b", null));
+        Thread.sleep(50);
+        assertTrue("Nothing is published while blocked", sent.isEmpty());
+        assertEquals(2, queue.size());
+
+        queue.unblock();
+        assertTrue(inFlight.awaitIdle(1, TimeUnit.SECONDS));
+        assertEquals("[a, b]", sent.toString());
+    }
+
+    @Test
+    public void testAwaitDrainedStopsWhileBlocked() throws InterruptedException {
+        queue = create(10, OutboundQueue.Overflow.FAIL_FAST);
+        assertTrue("Empty queue is drained", queue.awaitDrained(0, TimeUnit.MILLISECONDS));
+
+        queue.block();
+        queue.offer(pending("a", null));
+        long start = System.nanoTime();
+        assertFalse("Blocked events do not drain", queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertTrue("Waiting should end at once while blocked", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        queue.unblock();
+        assertTrue(queue.awaitDrained(1, TimeUnit.SECONDS));
+        assertEquals("[a]", sent.toString());
+    }
+
+    @Test
+    public void testFailFastRejectsWhenFull() throws InterruptedException {
+        queue = create(1, OutboundQueue.Overflow.FAIL_FAST);
+        queue.block();
+        queue.offer(pending("a", null));
+
+        try {
+            queue.offer(pending("b", null));
+            fail("Full queue should reject the event");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        assertEquals(1, metrics.getPublishDrops());
+        assertEquals("Event held back by the sender counts against the capacity", 1, queue.size());
+
+        queue.unblock();
+        assertTrue(inFlight.awaitIdle(1, TimeUnit.SECONDS));
+        assertEquals("[a]", sent.toString());
+    }
+
+    @Test
+    public void testDropOldestMakesRoom() throws InterruptedException, TimeoutException {
+        queue = create(1, OutboundQueue.Overflow.DROP_OLDEST);
+        queue.block();
+        CompletableFuture<Event> first = new CompletableFuture<>();
+        queue.offer(pending("a", first));
+        queue.offer(pending("b", null));
+
+        try {
+            first.get(1, TimeUnit.SECONDS);
+            fail("Dropped event should fail its future");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        queue.unblock();
+        assertTrue(inFlight.awaitIdle(1, TimeUnit.SECONDS));
+        assertEquals("[b]", sent.toString());
+    }
+
+    @Test
+    public void testBlockGivesUpAfterTimeout() {
+        queue = create(1, OutboundQueue.Overflow.BLOCK);
+        queue.block();
+        queue.offer(pending("a", null));
+
+        long start = System.nanoTime();
+        try {
+            queue.offer(pending("b", null));
+            fail("Full queue should reject the event after the timeout");
+        } catch (RejectedExecutionException e) {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    private OutboundQueue create(int capacity, OutboundQueue.Overflow overflow) {
+        return new OutboundQueue(capacity, 1, overflow, 50, (lane, publish) -> sent.add(publish.routingKey), inFlight, metrics);
+    }
+
+    private static OutboundQueue.Pending pending(String routingKey, CompletableFuture<Event> confirmed) {
+        return new OutboundQueue.Pending(routingKey, null, new byte[0], null, confirmed);
+    }
+}
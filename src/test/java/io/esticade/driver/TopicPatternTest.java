@@ -0,0 +1,49 @@
+package io.esticade.driver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopicPatternTest {
+    @Test
+    public void testLiteralPattern() {
+        TopicPattern pattern = TopicPattern.compile("block.Event");
+
+        assertTrue(pattern.matches("block.Event"));
+        assertFalse(pattern.matches("block.Event2"));
+        assertFalse(pattern.matches("block.Even"));
+        assertFalse(pattern.matches("block"));
+        assertFalse(pattern.matches("block.Event.more"));
+    }
+
+    @Test
+    public void testSingleWordWildcard() {
+        TopicPattern pattern = TopicPattern.compile("*.Event");
+
+        assertTrue(pattern.matches("0b4f6a34-1b4c-4c1d-9d3e-4c5e9d1a2b3c.Event"));
+        assertTrue(pattern.matches(".Event"));
+        assertFalse(pattern.matches("Event"));
+        assertFalse(pattern.matches("a.b.Event"));
+        assertFalse(pattern.matches("block.OtherEvent"));
+    }
+
+    @Test
+    public void testMultiWordWildcard() {
+        assertTrue(TopicPattern.compile("#").matches("a.b.c"));
+        assertTrue(TopicPattern.compile("block.#").matches("block"));
+        assertTrue(TopicPattern.compile("block.#").matches("block.Event"));
+        assertTrue(TopicPattern.compile("block.#").matches("block.a.b"));
+        assertFalse(TopicPattern.compile("block.#").matches("other.Event"));
+
+        assertTrue(TopicPattern.compile("#.Event").matches("Event"));
+        assertTrue(TopicPattern.compile("#.Event").matches("a.b.Event"));
+        assertFalse(TopicPattern.compile("#.Event").matches("a.Event.b"));
+
+        assertTrue(TopicPattern.compile("a.#.z").matches("a.z"));
+        assertTrue(TopicPattern.compile("a.#.z").matches("a.b.c.z"));
+        assertFalse(TopicPattern.compile("a.#.z").matches("a.b.c"));
+        assertTrue(TopicPattern.compile("a.#.*.z").matches("a.b.z"));
+        assertFalse(TopicPattern.compile("a.#.*.z").matches("a.z"));
+    }
+}